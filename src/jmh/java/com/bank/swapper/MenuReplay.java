@@ -0,0 +1,139 @@
+package com.bank.swapper;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+import net.runelite.api.MenuAction;
+import net.runelite.api.MenuEntry;
+import net.runelite.api.events.ClientTick;
+import net.runelite.client.util.Text;
+
+/**
+ * Feeds a {@link MenuRecording} through the plugin offline, one client tick per recorded menu, and
+ * reports the swaps it made and how long each tick took. The recording is replayed several times so
+ * the timings of the last pass are not dominated by warm up; run with
+ * {@code ./gradlew replayMenus -Precording=<file> [-Ppasses=<n>]}.
+ */
+public final class MenuReplay {
+	private MenuReplay() {
+	}
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1 || args[0].isEmpty()) {
+			System.err.println("Usage: MenuReplay <recording> [passes]");
+			System.exit(1);
+		}
+		final int passes = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		
+		final MenuRecording recording;
+		try (InputStream in = new BufferedInputStream(new FileInputStream(args[0]))) {
+			recording = MenuRecording.read(in);
+		} catch (IOException e) {
+			System.err.println("Unable to read " + args[0] + ": " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		
+		Map<String, Object> config = new HashMap<>();
+		config.put("bankCustomization", recording.bankCustomization);
+		config.put("bankInventoryCustomization", recording.bankInventoryCustomization);
+		PluginHarness harness = new PluginHarness(config);
+		loadRules(harness.swapRuleStore, recording.rules);
+		harness.swapRuleStore.setGroupRules(GroupRules.compile(recording.groupSwaps, itemNames(recording)));
+		
+		final ClientTick clientTick = new ClientTick();
+		final Map<String, Integer> decisions = new TreeMap<>();
+		int swaps = 0;
+		String lastDecision = null;
+		for (int pass = 1; pass <= passes; pass++) {
+			final boolean report = pass == passes;
+			if (report) {
+				harness.metrics.reset();
+			}
+			
+			for (int i = 0; i < recording.frames.size(); i++) {
+				MenuRecording.Frame frame = recording.frames.get(i);
+				harness.setShift(frame.shift);
+				harness.setMenu(entries(frame));
+				harness.clearCommitted();
+				
+				// The plugin times the tick itself
+				harness.plugin.onClientTick(clientTick);
+				if (!report) {
+					continue;
+				}
+				
+				MenuEntry[] committed = harness.committed();
+				String decision = null;
+				if (committed != null) {
+					MenuEntry top = committed[committed.length - 1];
+					decision = top.getOption() + " " + top.getTarget() + (frame.shift ? " (shift)" : "");
+					decisions.merge(decision, 1, Integer::sum);
+					++swaps;
+				}
+				if (decision != null && !decision.equals(lastDecision)) {
+					System.out.println("Tick " + i + ": swapped " + decision);
+				}
+				lastDecision = decision;
+			}
+		}
+		
+		System.out.println();
+		System.out.println(recording.frames.size() + " ticks, " + swaps + " swapped");
+		decisions.forEach((decision, count) -> System.out.println("  " + count + " x " + decision));
+		System.out.println("Tick: p50 " + SwapMetrics.formatNanos(harness.metrics.percentile(SwapMetrics.CLIENT_TICK, 0.5))
+				+ ", p99 " + SwapMetrics.formatNanos(harness.metrics.percentile(SwapMetrics.CLIENT_TICK, 0.99))
+				+ ", max " + SwapMetrics.formatNanos(harness.metrics.max(SwapMetrics.CLIENT_TICK)));
+		for (int counter = 0; counter < SwapMetrics.COUNTER_NAMES.length; counter++) {
+			System.out.println(SwapMetrics.COUNTER_NAMES[counter] + ": " + harness.metrics.get(counter));
+		}
+	}
+	
+	private static void loadRules(SwapRuleStore swapRuleStore, String rules) {
+		IntIntMap[] tables = SwapRules.emptyTables();
+		SwapRuleCodec.decode(rules, tables);
+		for (int table = 0; table < tables.length; table++) {
+			// The inverse of SwapRules.table
+			final int namespace = table / 2 + 1;
+			final boolean shift = (table & 1) != 0;
+			tables[table].forEach((itemId, rule) -> swapRuleStore.set(namespace, shift, itemId, rule));
+		}
+	}
+	
+	// There are no item definitions offline, so the names group swaps match are taken from the targets
+	// of the recorded entries
+	private static IntFunction<String> itemNames(MenuRecording recording) {
+		final Map<Integer, String> names = new HashMap<>();
+		for (MenuRecording.Frame frame : recording.frames) {
+			for (int i = 0; i < frame.size(); i++) {
+				if (frame.itemIds[i] != -1) {
+					names.putIfAbsent(frame.itemIds[i], Text.removeTags(frame.targets[i]));
+				}
+			}
+		}
+		return id -> names.getOrDefault(id, "");
+	}
+	
+	// Fresh entries for every tick, as the plugin changes the type of the entry it swaps
+	private static MenuEntry[] entries(MenuRecording.Frame frame) {
+		MenuEntry[] entries = new MenuEntry[frame.size()];
+		for (int i = 0; i < entries.length; i++) {
+			TestMenuEntry entry = new TestMenuEntry();
+			entry.setOption(frame.options[i])
+					.setTarget(frame.targets[i])
+					.setType(MenuAction.of(frame.types[i]))
+					.setIdentifier(frame.identifiers[i])
+					.setParam0(frame.param0s[i])
+					.setParam1(frame.param1s[i]);
+			entry.setItemId(frame.itemIds[i]);
+			entries[i] = entry;
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,202 @@
+package com.bank.swapper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import net.runelite.api.MenuEntry;
+import net.runelite.api.events.ClientTick;
+import net.runelite.api.events.MenuOpened;
+
+/**
+ * Runs fixed scenarios against the plugin and compares the allocation per tick with a checked in
+ * baseline, failing when it has grown past its tolerance or has no baseline. Run by
+ * {@code ./gradlew perfGate}, and by {@code ./gradlew check} once the baseline has figures;
+ * {@code -PperfGateTime} also checks the time per tick, which only compares
+ * on the machine that recorded the baseline, and {@code -PupdatePerfBaseline} records the figures of
+ * the current code as the new baseline instead.
+ * <p>
+ * Each scenario is measured over several batches and the best batch is kept, which is far less noisy
+ * than the mean. Allocation is read from the thread's allocation counter, so it includes the few bytes
+ * the {@link PluginHarness} client allocates per tick; those are the same for the baseline and every
+ * run.
+ */
+public final class PerfGate {
+	private static final int AIR_RUNE = 556;
+	private static final int WATER_RUNE = 557;
+	// Rules stored for other items, so lookups are made against a realistically sized rule set
+	private static final int STORED_RULES = 5000;
+	
+	private static final int WARMUP_OPS = 200_000;
+	private static final int BATCH_OPS = 100_000;
+	private static final int BATCHES = 7;
+	
+	private static final String NS_TOLERANCE = "tolerance.ns";
+	private static final String BYTES_TOLERANCE = "tolerance.bytes";
+	private static final String BYTES_SLACK = "tolerance.bytesSlack";
+	
+	private PerfGate() {
+	}
+	
+	public static void main(String[] args) throws Exception {
+		final File baselineFile = new File(args[0]);
+		final boolean update = args.length > 1 && "update".equals(args[1]);
+		final boolean checkTime = args.length > 2 && "time".equals(args[2]);
+		
+		Properties baseline = new Properties();
+		if (baselineFile.exists()) {
+			try (InputStream in = new FileInputStream(baselineFile)) {
+				baseline.load(in);
+			}
+		}
+		// Fractions the figures may grow by; bytes also get a fixed slack, as 0 bytes can't grow by a fraction
+		final double nsTolerance = Double.parseDouble(baseline.getProperty(NS_TOLERANCE, "0.25"));
+		final double bytesTolerance = Double.parseDouble(baseline.getProperty(BYTES_TOLERANCE, "0.10"));
+		final double bytesSlack = Double.parseDouble(baseline.getProperty(BYTES_SLACK, "16"));
+		
+		List<String> failures = new ArrayList<>();
+		Map<String, double[]> results = new LinkedHashMap<>();
+		for (Map.Entry<String, Scenario> scenario : scenarios().entrySet()) {
+			final String name = scenario.getKey();
+			final double[] result = measure(scenario.getValue().create());
+			results.put(name, result);
+			System.out.println(String.format(Locale.ROOT, "%-20s %10.1f ns/tick %10.1f B/tick", name, result[0], result[1]));
+			
+			final String ns = baseline.getProperty(name + ".ns");
+			final String bytes = baseline.getProperty(name + ".bytes");
+			if (update) {
+				continue;
+			}
+			if (bytes == null || (checkTime && ns == null)) {
+				failures.add(name + ": no baseline, record one with -PupdatePerfBaseline");
+				continue;
+			}
+			if (checkTime && result[0] > Double.parseDouble(ns) * (1 + nsTolerance)) {
+				failures.add(String.format(Locale.ROOT, "%s: %.1f ns/tick, baseline %s", name, result[0], ns));
+			}
+			if (result[1] > Double.parseDouble(bytes) * (1 + bytesTolerance) + bytesSlack) {
+				failures.add(String.format(Locale.ROOT, "%s: %.1f B/tick, baseline %s", name, result[1], bytes));
+			}
+		}
+		
+		if (update) {
+			writeBaseline(baselineFile, nsTolerance, bytesTolerance, bytesSlack, results);
+			System.out.println("Wrote " + baselineFile);
+			return;
+		}
+		if (!failures.isEmpty()) {
+			System.err.println("Performance regressed past the baseline in " + baselineFile + ":");
+			failures.forEach(failure -> System.err.println("  " + failure));
+			System.exit(1);
+		}
+	}
+	
+	private interface Scenario {
+		Runnable create() throws Exception;
+	}
+	
+	private static Map<String, Scenario> scenarios() {
+		Map<String, Scenario> scenarios = new LinkedHashMap<>();
+		scenarios.put("tickUnchanged.9", () -> clientTick(9, true, false));
+		scenarios.put("tickUnchanged.64", () -> clientTick(64, true, false));
+		scenarios.put("tickChanging.9", () -> clientTick(9, true, true));
+		scenarios.put("tickChanging.64", () -> clientTick(64, true, true));
+		scenarios.put("tickNoRule.64", () -> clientTick(64, false, true));
+		scenarios.put("configureClick.9", () -> configureClick(9));
+		return scenarios;
+	}
+	
+	private static PluginHarness harness(boolean ruleHit) throws Exception {
+		Map<String, Object> config = new HashMap<>();
+		config.put("bankCustomization", true);
+		config.put("bankInventoryCustomization", true);
+		PluginHarness harness = new PluginHarness(config);
+		harness.setShift(true);
+		
+		for (int i = 0; i < STORED_RULES; i++) {
+			harness.swapRuleStore.set(i % 2 == 0 ? MenuEntryClassifier.BANK_INVENTORY : MenuEntryClassifier.BANK, i % 3 == 0, 20000 + i, PluginHarness.BANK_OPS[i % PluginHarness.BANK_OPS.length]);
+		}
+		final int target = ruleHit ? PluginHarness.WITHDRAW_5_OP : PluginHarness.MISSING_OP;
+		harness.swapRuleStore.set(MenuEntryClassifier.BANK, true, AIR_RUNE, target);
+		harness.swapRuleStore.set(MenuEntryClassifier.BANK, true, WATER_RUNE, target);
+		return harness;
+	}
+	
+	private static Runnable clientTick(int menuSize, boolean ruleHit, boolean changing) throws Exception {
+		final PluginHarness harness = harness(ruleHit);
+		final MenuEntry[] airMenu = PluginHarness.bankMenu(AIR_RUNE, menuSize);
+		final MenuEntry[] waterMenu = PluginHarness.bankMenu(WATER_RUNE, menuSize);
+		final ClientTick clientTick = new ClientTick();
+		if (ruleHit) {
+			harness.requireSwap(airMenu);
+			harness.requireSwap(waterMenu);
+		}
+		harness.setMenu(airMenu);
+		
+		final boolean[] alternate = {false};
+		return () -> {
+			if (changing) {
+				alternate[0] = !alternate[0];
+				harness.setMenu(alternate[0] ? airMenu : waterMenu);
+			}
+			harness.plugin.onClientTick(clientTick);
+		};
+	}
+	
+	private static Runnable configureClick(int menuSize) throws Exception {
+		final PluginHarness harness = harness(true);
+		final MenuOpened menuOpened = new MenuOpened();
+		menuOpened.setMenuEntries(PluginHarness.bankMenu(AIR_RUNE, menuSize));
+		return () -> harness.plugin.onMenuOpened(menuOpened);
+	}
+	
+	// The best ns and bytes per op of the batches
+	private static double[] measure(Runnable op) {
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long thread = Thread.currentThread().getId();
+		for (int i = 0; i < WARMUP_OPS; i++) {
+			op.run();
+		}
+		
+		double bestNs = Double.MAX_VALUE;
+		double bestBytes = Double.MAX_VALUE;
+		for (int batch = 0; batch < BATCHES; batch++) {
+			final long startBytes = threads.getThreadAllocatedBytes(thread);
+			final long start = System.nanoTime();
+			for (int i = 0; i < BATCH_OPS; i++) {
+				op.run();
+			}
+			final long elapsed = System.nanoTime() - start;
+			final long allocated = threads.getThreadAllocatedBytes(thread) - startBytes;
+			bestNs = Math.min(bestNs, (double) elapsed / BATCH_OPS);
+			bestBytes = Math.min(bestBytes, (double) allocated / BATCH_OPS);
+		}
+		return new double[] {bestNs, bestBytes};
+	}
+	
+	private static void writeBaseline(File file, double nsTolerance, double bytesTolerance, double bytesSlack, Map<String, double[]> results) throws IOException {
+		try (PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+			out.println("# Baseline of ./gradlew perfGate, written by ./gradlew perfGate -PupdatePerfBaseline");
+			out.println("# Bytes per tick are checked on every run; ns per tick only with -PperfGateTime, on the machine that");
+			out.println("# recorded them.");
+			out.println(NS_TOLERANCE + "=" + nsTolerance);
+			out.println(BYTES_TOLERANCE + "=" + bytesTolerance);
+			out.println(BYTES_SLACK + "=" + bytesSlack);
+			results.forEach((name, result) -> {
+				out.println(String.format(Locale.ROOT, "%s.ns=%.1f", name, result[0]));
+				out.println(String.format(Locale.ROOT, "%s.bytes=%.1f", name, result[1]));
+			});
+		}
+	}
+}
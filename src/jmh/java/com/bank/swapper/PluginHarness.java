@@ -0,0 +1,216 @@
+package com.bank.swapper;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import java.awt.event.KeyEvent;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.api.MenuAction;
+import net.runelite.api.MenuEntry;
+import net.runelite.api.events.ClientTick;
+import net.runelite.api.events.WidgetLoaded;
+import net.runelite.api.widgets.Widget;
+import net.runelite.api.widgets.WidgetID;
+import net.runelite.client.callback.ClientThread;
+import net.runelite.client.chat.ChatMessageManager;
+import net.runelite.client.config.ConfigManager;
+import net.runelite.client.input.KeyManager;
+import net.runelite.client.ui.overlay.OverlayManager;
+import org.mockito.Mockito;
+
+/**
+ * Runs the plugin outside the client, logged in with the bank open, for the benchmarks and the menu
+ * replay. The client and config are plain {@link Proxy} instances rather than Mockito mocks so that
+ * the stubs themselves add as little as possible to the time and allocation figures.
+ */
+final class PluginHarness {
+	// Packed widget id of the bank item container
+	static final int BANK_ITEM_CONTAINER = 786445;
+	// Bottom to top, as in the client's menu
+	static final String[] BANK_OPTIONS = {
+			"Examine", "Withdraw-All-but-1", "Withdraw-All", "Withdraw-X", "Withdraw-16", "Withdraw-10", "Withdraw-5", "Withdraw-1"
+	};
+	// Ops of BANK_OPTIONS as the client assigns them, with Withdraw-1 shown under its own op rather
+	// than as the default quantity option
+	static final int[] BANK_OPS = {
+			MenuEntryClassifier.EXAMINE_OP, 8, 7, 6, 5, 4, 3, MenuEntryClassifier.WITHDRAW_1_OP
+	};
+	// Ops of the entries in bankMenu menus, for rules that match one of them and rules that match none
+	static final int WITHDRAW_5_OP = 3;
+	static final int MISSING_OP = 9;
+	
+	final BankMenuEntrySwapperPlugin plugin;
+	final SwapRuleStore swapRuleStore;
+	final SwapMetrics metrics;
+	
+	private final KeyEvent shiftKey = Mockito.mock(KeyEvent.class);
+	private MenuEntry[] menu = new MenuEntry[0];
+	private MenuEntry[] committed;
+	
+	/**
+	 * @param config values of the config items by method name; any other item is false, 0 or empty
+	 */
+	PluginHarness(Map<String, Object> config) throws Exception {
+		final Client client = proxy(Client.class, new ClientHandler());
+		final BankMenuEntrySwapperConfig pluginConfig = proxy(BankMenuEntrySwapperConfig.class, (p, method, args) -> {
+			if (config.containsKey(method.getName())) {
+				return config.get(method.getName());
+			}
+			return method.getReturnType() == String.class ? "" : defaultValue(p, method, args);
+		});
+		
+		Injector injector = Guice.createInjector(binder -> {
+			binder.bind(Client.class).toInstance(client);
+			binder.bind(ClientThread.class).toInstance(Mockito.mock(ClientThread.class));
+			binder.bind(BankMenuEntrySwapperConfig.class).toInstance(pluginConfig);
+			binder.bind(ConfigManager.class).toInstance(Mockito.mock(ConfigManager.class));
+			binder.bind(ChatMessageManager.class).toInstance(Mockito.mock(ChatMessageManager.class));
+			binder.bind(KeyManager.class).toInstance(Mockito.mock(KeyManager.class));
+			binder.bind(OverlayManager.class).toInstance(Mockito.mock(OverlayManager.class));
+			binder.bind(ScheduledExecutorService.class).toInstance(Mockito.mock(ScheduledExecutorService.class));
+		});
+		plugin = injector.getInstance(BankMenuEntrySwapperPlugin.class);
+		swapRuleStore = injector.getInstance(SwapRuleStore.class);
+		// Rules are loaded on login by the client thread, which is a mock here
+		swapRuleStore.load(null);
+		metrics = injector.getInstance(SwapMetrics.class);
+		plugin.startUp();
+		
+		Mockito.when(shiftKey.getKeyCode()).thenReturn(KeyEvent.VK_SHIFT);
+		
+		WidgetLoaded widgetLoaded = new WidgetLoaded();
+		widgetLoaded.setGroupId(WidgetID.BANK_GROUP_ID);
+		plugin.onWidgetLoaded(widgetLoaded);
+	}
+	
+	void setShift(boolean shift) {
+		if (shift) {
+			plugin.keyPressed(shiftKey);
+		} else {
+			plugin.keyReleased(shiftKey);
+		}
+	}
+	
+	/**
+	 * Sets the menu the client builds on every tick.
+	 */
+	void setMenu(MenuEntry[] menu) {
+		this.menu = menu;
+	}
+	
+	/**
+	 * The menu last set by the plugin, or null if it has not set one since {@link #clearCommitted()}.
+	 */
+	MenuEntry[] committed() {
+		return committed;
+	}
+	
+	void clearCommitted() {
+		committed = null;
+	}
+	
+	/**
+	 * Runs a tick on the menu and fails unless the plugin swapped it, so a scenario meant to measure
+	 * swaps can't silently measure menus its rules no longer match.
+	 */
+	void requireSwap(MenuEntry[] menu) {
+		setMenu(menu);
+		clearCommitted();
+		plugin.onClientTick(new ClientTick());
+		if (committed == null) {
+			throw new IllegalStateException("The rules did not swap the menu");
+		}
+		clearCommitted();
+	}
+	
+	/**
+	 * A bank item's menu, padded with unrelated entries below it up to the given size.
+	 */
+	static MenuEntry[] bankMenu(int itemId, int size) {
+		MenuEntry[] entries = new MenuEntry[Math.max(size, BANK_OPTIONS.length + 1)];
+		int idx = 0;
+		entries[idx++] = new TestMenuEntry().setOption("Cancel").setTarget("").setType(MenuAction.CANCEL);
+		while (idx < entries.length - BANK_OPTIONS.length) {
+			entries[idx++] = new TestMenuEntry().setOption("Walk here").setTarget("").setType(MenuAction.WALK);
+		}
+		for (int i = 0; i < BANK_OPTIONS.length; i++) {
+			TestMenuEntry entry = new TestMenuEntry();
+			entry.setOption(BANK_OPTIONS[i])
+					.setTarget("Rune")
+					.setType(i < 4 ? MenuAction.CC_OP_LOW_PRIORITY : MenuAction.CC_OP)
+					.setIdentifier(BANK_OPS[i])
+					.setParam1(BANK_ITEM_CONTAINER);
+			entry.setItemId(itemId);
+			entries[idx++] = entry;
+		}
+		return entries;
+	}
+	
+	private final class ClientHandler implements InvocationHandler {
+		private final Widget widget = proxy(Widget.class, PluginHarness::defaultValue);
+		
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			switch (method.getName()) {
+				case "getGameState":
+					return GameState.LOGGED_IN;
+				case "getMenuEntries":
+					// The client hands out a copy of its menu
+					return Arrays.copyOf(menu, menu.length);
+				case "setMenuEntries":
+					committed = (MenuEntry[]) args[0];
+					return null;
+				case "createMenuEntry":
+					return new TestMenuEntry();
+				case "getWidget":
+					return widget;
+				default:
+					return defaultValue(proxy, method, args);
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler);
+	}
+	
+	private static Object defaultValue(Object proxy, Method method, Object[] args) {
+		switch (method.getName()) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return proxy.getClass().getInterfaces()[0].getSimpleName() + "Proxy";
+		}
+		
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		} else if (type == double.class) {
+			return 0d;
+		} else if (type == float.class) {
+			return 0f;
+		} else if (type == short.class) {
+			return (short) 0;
+		} else if (type == byte.class) {
+			return (byte) 0;
+		} else if (type == char.class) {
+			return (char) 0;
+		}
+		return null;
+	}
+}
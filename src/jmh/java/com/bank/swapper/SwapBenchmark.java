@@ -0,0 +1,131 @@
+package com.bank.swapper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.runelite.api.MenuEntry;
+import net.runelite.api.events.ClientTick;
+import net.runelite.api.events.MenuOpened;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-tick swap path and the configure menu against synthetic bank menus, with the
+ * plugin run by a {@link PluginHarness}; run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SwapBenchmark {
+	private static final int AIR_RUNE = 556;
+	private static final int WATER_RUNE = 557;
+	
+	// Number of entries in the menu; anything over the bank options is padded with unrelated entries
+	@Param({"9", "64"})
+	int menuSize;
+	
+	// Whether the hovered item has a rule that matches one of its entries
+	@Param({"true", "false"})
+	boolean ruleHit;
+	
+	@Param({"true", "false"})
+	boolean shift;
+	
+	// Rules stored for other items, to show lookups do not degrade with a large rule set
+	@Param({"0", "5000"})
+	int storedRules;
+	
+	private PluginHarness harness;
+	private BankMenuEntrySwapperPlugin plugin;
+	private final ClientTick clientTick = new ClientTick();
+	private final MenuOpened menuOpened = new MenuOpened();
+	
+	private MenuEntry[] airMenu;
+	private MenuEntry[] waterMenu;
+	private boolean alternate;
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		Map<String, Object> config = new HashMap<>();
+		config.put("bankCustomization", true);
+		config.put("bankInventoryCustomization", true);
+		harness = new PluginHarness(config);
+		plugin = harness.plugin;
+		harness.setShift(shift);
+		
+		SwapRuleStore swapRuleStore = harness.swapRuleStore;
+		for (int i = 0; i < storedRules; i++) {
+			swapRuleStore.set(i % 2 == 0 ? MenuEntryClassifier.BANK_INVENTORY : MenuEntryClassifier.BANK, i % 3 == 0, 20000 + i, PluginHarness.BANK_OPS[i % PluginHarness.BANK_OPS.length]);
+		}
+		
+		airMenu = PluginHarness.bankMenu(AIR_RUNE, menuSize);
+		waterMenu = PluginHarness.bankMenu(WATER_RUNE, menuSize);
+		harness.setMenu(airMenu);
+		
+		int target = ruleHit ? PluginHarness.WITHDRAW_5_OP : PluginHarness.MISSING_OP;
+		swapRuleStore.set(MenuEntryClassifier.BANK, shift, AIR_RUNE, target);
+		swapRuleStore.set(MenuEntryClassifier.BANK, shift, WATER_RUNE, target);
+		if (ruleHit) {
+			harness.requireSwap(airMenu);
+			harness.requireSwap(waterMenu);
+			harness.setMenu(airMenu);
+		}
+		
+		menuOpened.setMenuEntries(airMenu);
+	}
+	
+	/**
+	 * The steady state: the same menu is rebuilt on every tick while an item is hovered.
+	 */
+	@Benchmark
+	public MenuEntry[] clientTickUnchanged() {
+		harness.setMenu(airMenu);
+		plugin.onClientTick(clientTick);
+		return harness.committed();
+	}
+	
+	/**
+	 * The menu changes on every tick, so every entry has to be evaluated.
+	 */
+	@Benchmark
+	public MenuEntry[] clientTickChanging() {
+		alternate = !alternate;
+		harness.setMenu(alternate ? airMenu : waterMenu);
+		plugin.onClientTick(clientTick);
+		return harness.committed();
+	}
+	
+	@Benchmark
+	public MenuEntry[] configureClick() {
+		plugin.onMenuOpened(menuOpened);
+		return harness.committed();
+	}
+	
+	/**
+	 * Classifies every entry of the menu; the gc profiler should report no allocation.
+	 */
+	@Benchmark
+	public int classifyMenu() {
+		int swappable = 0;
+		for (MenuEntry entry : airMenu) {
+			if (MenuEntryClassifier.classify(entry) != MenuEntryClassifier.OTHER) {
+				++swappable;
+			}
+		}
+		return swappable;
+	}
+}
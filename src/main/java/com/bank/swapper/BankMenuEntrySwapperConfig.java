@@ -32,4 +32,70 @@ public interface BankMenuEntrySwapperConfig extends Config
 	{
 		return true;
 	}
-}
\ No newline at end of file
+	
+	@ConfigItem(
+		keyName = "eventDrivenSwapping",
+		name = "Swap on menu events",
+		description = "Only evaluates menus that bank or bank inventory entries were added to, instead of scanning the whole menu every client tick",
+		position = 3
+	)
+	default boolean eventDrivenSwapping()
+	{
+		return false;
+	}
+	
+	@ConfigItem(
+		keyName = "compactSwapMenu",
+		name = "Compact swap menu",
+		description = "Groups the left/shift click swap options under a single \"Swap options\" sub menu",
+		position = 4
+	)
+	default boolean compactSwapMenu()
+	{
+		return false;
+	}
+	
+	@ConfigItem(
+		keyName = "swapProfile",
+		name = "Swap profile",
+		description = "Name of the set of swaps to use, e.g. one for skilling and one for bossing. Leave empty for the default set",
+		position = 5
+	)
+	default String swapProfile()
+	{
+		return "";
+	}
+	
+	@ConfigItem(
+		keyName = "groupSwaps",
+		name = "Group swaps",
+		description = "Swaps for groups of items, one per line, e.g. \"*potion*, 1704-1712 = shift Withdraw-1\". Items are ids, id ranges or names with * wildcards. Swaps set on an item take precedence",
+		position = 6
+	)
+	default String groupSwaps()
+	{
+		return "";
+	}
+	
+	@ConfigItem(
+		keyName = "metricsOverlay",
+		name = "Show performance stats",
+		description = "Shows an overlay with the time the plugin spends per client tick and menu. The same stats are printed by the ::bmes command",
+		position = 7
+	)
+	default boolean metricsOverlay()
+	{
+		return false;
+	}
+	
+	@ConfigItem(
+		keyName = "tickBudget",
+		name = "Tick budget (us)",
+		description = "Microseconds the plugin may spend on the menu per client tick. When it takes longer several ticks in a row, only the top of the menu is evaluated for a while. 0 disables the limit",
+		position = 8
+	)
+	default int tickBudget()
+	{
+		return 1000;
+	}
+}
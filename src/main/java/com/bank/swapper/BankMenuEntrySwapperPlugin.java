@@ -1,9 +1,16 @@
 package com.bank.swapper;
 
-import com.google.common.collect.Sets;
 import com.google.inject.Provides;
 
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Consumer;
 
 import javax.inject.Inject;
@@ -12,46 +19,131 @@ import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.ChatMessageType;
 import net.runelite.api.Client;
 import net.runelite.api.GameState;
-import net.runelite.api.KeyCode;
+import net.runelite.api.Menu;
 import net.runelite.api.MenuAction;
 import net.runelite.api.MenuEntry;
 import net.runelite.api.events.ClientTick;
+import net.runelite.api.events.CommandExecuted;
+import net.runelite.api.events.FocusChanged;
+import net.runelite.api.events.GameStateChanged;
+import net.runelite.api.events.MenuEntryAdded;
 import net.runelite.api.events.MenuOpened;
-import net.runelite.api.widgets.WidgetID;
+import net.runelite.api.events.PostMenuSort;
+import net.runelite.api.events.WidgetClosed;
+import net.runelite.api.events.WidgetLoaded;
 import net.runelite.api.widgets.WidgetInfo;
 import net.runelite.client.chat.ChatMessageBuilder;
 import net.runelite.client.chat.ChatMessageManager;
+import net.runelite.client.RuneLite;
+import net.runelite.client.callback.ClientThread;
 import net.runelite.client.chat.QueuedMessage;
 import net.runelite.client.config.ConfigManager;
 import net.runelite.client.eventbus.Subscribe;
-import net.runelite.client.game.ItemVariationMapping;
+import net.runelite.client.events.ConfigChanged;
+import net.runelite.client.events.RuneScapeProfileChanged;
+import net.runelite.client.input.KeyListener;
+import net.runelite.client.input.KeyManager;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
+import net.runelite.client.ui.overlay.OverlayManager;
 import net.runelite.client.util.Text;
 
 @Slf4j
 @PluginDescriptor(name = "Bank Menu Entry Swapper")
-public class BankMenuEntrySwapperPlugin extends Plugin {
+public class BankMenuEntrySwapperPlugin extends Plugin implements KeyListener {
 	static final String BANK_KEY_PREFIX = "bank_";
 	static final String BANK_SHIFT_KEY_PREFIX = "bank_shift_";
 	static final String BANK_INVENTORY_KEY_PREFIX = "bank_inventory_";
 	static final String BANK_INVENTORY_SHIFT_KEY_PREFIX = "bank_inventory_shift_";
+	static final String PROFILE_KEY = "swapProfile";
+	static final String GROUP_SWAPS_KEY = "groupSwaps";
+	static final String STATS_COMMAND = "bmes";
 	
-	private static final Set<MenuAction> menuTypes = Sets.newHashSet(MenuAction.CC_OP, MenuAction.CC_OP_LOW_PRIORITY);
-	private static final Set<Integer> bankWidgetIds = Sets.newHashSet(WidgetID.BANK_GROUP_ID/*, WidgetID.GROUP_STORAGE_GROUP_ID*/);
-	private static final Set<Integer> bankInventoryWidgetIds = Sets.newHashSet(WidgetID.BANK_INVENTORY_GROUP_ID/*, WidgetID.GROUP_STORAGE_INVENTORY_GROUP_ID*/);
+	// Flags stored in param1 of the compact sub menu entries, above which the namespace is stored
+	private static final int SUB_MENU_SHIFT = 1;
+	private static final int SUB_MENU_RESET = 1 << 1;
+	private static final int SUB_MENU_NAMESPACE_SHIFT = 2;
+	// Entries from the top of the menu evaluated while over the tick budget; a hovered item's own
+	// entries are at the top
+	private static final int DEGRADED_SCAN_DEPTH = 16;
+	// Consecutive evaluations over the tick budget that start the degraded mode, so a single GC pause
+	// or the slow first evaluation does not
+	static final int OVER_BUDGET_STREAK = 5;
+	// Menus evaluated in the degraded mode after going over the tick budget, before trying the whole
+	// menu again
+	private static final int DEGRADED_TICKS = 50;
+	// Size at which a menu recording is stopped
+	private static final int MAX_RECORDING_BYTES = 16 << 20;
+	private static final File RECORDING_DIR = new File(RuneLite.RUNELITE_DIR, "bank-swapper");
 	
 	@Inject
 	private Client client;
 	
+	@Inject
+	private ClientThread clientThread;
+	
 	@Inject
 	private BankMenuEntrySwapperConfig config;
 	
+	@Inject
+	private ChatMessageManager chatMessageManager;
+	
+	@Inject
+	private KeyManager keyManager;
+	
 	@Inject
 	private ConfigManager configManager;
 	
 	@Inject
-	private ChatMessageManager chatMessageManager;
+	private SwapRuleStore swapRuleStore;
+	
+	@Inject
+	private OverlayManager overlayManager;
+	
+	@Inject
+	private SwapMetrics metrics;
+	
+	@Inject
+	private SwapMetricsOverlay metricsOverlay;
+	
+	@Inject
+	private ScheduledExecutorService executor;
+	
+	private final MenuFingerprint menuFingerprint = new MenuFingerprint();
+	private final SwapMenuCache swapMenuCache = new SwapMenuCache();
+	private final Consumer<MenuEntry> subMenuClicked = this::onSubMenuClicked;
+	private final Consumer<SwapOption> swapClicked = this::setSwap;
+	private final Consumer<SwapOption> resetClicked = option -> resetSwap(option.namespace, option.target, option.itemId);
+	
+	// Index promoted to the left click option on the last evaluated tick, or -1
+	private int swapIndex = -1;
+	
+	// Bank interfaces that are currently loaded; nothing is evaluated while there are none
+	private final Set<Integer> loadedInterfaces = new HashSet<>();
+	private boolean armed;
+	
+	// Config and modifier state, kept in fields so the menu is evaluated without calling into the config
+	// manager or the client
+	private boolean bankCustomization;
+	private boolean bankInventoryCustomization;
+	// Whether swapping is enabled, by namespace
+	private final boolean[] namespaceEnabled = new boolean[MenuEntryClassifier.NAMESPACE_LIMIT];
+	private boolean eventDriven;
+	private boolean compactSwapMenu;
+	// Nanoseconds one evaluation of the menu may take, or 0 for no limit
+	private long tickBudgetNanos;
+	private volatile boolean shiftPressed;
+	
+	// Set when an entry of a swappable interface is added to the menu being built
+	private boolean bankEntryAdded;
+	
+	// Menus left to evaluate in the degraded mode, which only looks at the top of the menu
+	private int degradedTicks;
+	// Evaluations in a row that went over the tick budget
+	private int overBudgetStreak;
+	
+	// Records every evaluated menu while set, see ::bmes record
+	private MenuRecording.Writer recording;
 	
 	@Provides
 	BankMenuEntrySwapperConfig provideConfig(ConfigManager configManager) {
@@ -60,127 +152,514 @@ public class BankMenuEntrySwapperPlugin extends Plugin {
 	
 	@Override
 	protected void startUp() throws Exception {
+		loadConfig();
+		loadGroupRules();
+		keyManager.registerKeyListener(this);
+		clientThread.invokeLater(() -> {
+			if (client.getGameState() == GameState.LOGGED_IN) {
+				loadRules();
+			}
+			
+			// The plugin may be enabled with an interface already open
+			for (SwapInterface swapInterface : SwapInterface.values()) {
+				if (client.getWidget(swapInterface.container) != null) {
+					setInterfaceLoaded(swapInterface.groupId, true);
+				}
+			}
+		});
 		log.info("BMES started.");
 	}
 	
 	@Override
 	protected void shutDown() throws Exception {
+		keyManager.unregisterKeyListener(this);
+		shiftPressed = false;
+		if (recording != null) {
+			stopRecording();
+		}
+		// The executor may not run again if the client is closing, and this is not the client thread
+		swapRuleStore.flush();
+		swapRuleStore.release();
+		swapRuleStore.setGroupRules(GroupRules.EMPTY);
+		swapMenuCache.clear();
+		overlayManager.remove(metricsOverlay);
+		degradedTicks = 0;
+		overBudgetStreak = 0;
+		menuFingerprint.invalidate();
+		loadedInterfaces.clear();
+		armed = false;
 		log.info("BMES shut down.");
 	}
 	
+	@Subscribe
+	public void onConfigChanged(ConfigChanged event) {
+		if (!BankMenuEntrySwapperConfig.GROUP.equals(event.getGroup())) {
+			return;
+		}
+		
+		if (SwapRuleStore.isRuleKey(event.getKey())) {
+			// Decisions made with the old rules are dropped through the rule versions
+			swapRuleStore.applyConfigChange(event.getProfile(), event.getKey(), event.getNewValue());
+			return;
+		}
+		if (PROFILE_KEY.equals(event.getKey())) {
+			swapRuleStore.switchProfile(configuredProfile());
+			return;
+		}
+		if (GROUP_SWAPS_KEY.equals(event.getKey())) {
+			loadGroupRules();
+			return;
+		}
+		// Config changes are handled off the client thread, while the state is read and written by the
+		// menu evaluation on it
+		clientThread.invokeLater(() -> {
+			loadConfig();
+			bankEntryAdded = false;
+			degradedTicks = 0;
+			overBudgetStreak = 0;
+			menuFingerprint.invalidate();
+		});
+	}
+	
+	private String configuredProfile() {
+		return config.swapProfile().trim().toLowerCase();
+	}
+	
+	private void loadGroupRules() {
+		// Names are only looked up by the matcher when the menu is evaluated on the client thread
+		swapRuleStore.setGroupRules(GroupRules.compile(config.groupSwaps(), id -> client.getItemDefinition(id).getName()));
+	}
+	
+	private void loadConfig() {
+		bankCustomization = config.bankCustomization();
+		bankInventoryCustomization = config.bankInventoryCustomization();
+		// The other interfaces follow the bank toggles
+		for (SwapInterface swapInterface : SwapInterface.values()) {
+			namespaceEnabled[swapInterface.namespace] = swapInterface.deposits ? bankInventoryCustomization : bankCustomization;
+		}
+		eventDriven = config.eventDrivenSwapping();
+		compactSwapMenu = config.compactSwapMenu();
+		tickBudgetNanos = Math.max(0, config.tickBudget()) * 1_000L;
+		// Also loaded by startUp off the client thread, which the metrics are only recorded on
+		clientThread.invokeLater(() -> metrics.increment(SwapMetrics.CONFIG_READS));
+		
+		if (config.metricsOverlay()) {
+			overlayManager.add(metricsOverlay);
+		} else {
+			overlayManager.remove(metricsOverlay);
+		}
+	}
+	
+	@Override
+	public void keyTyped(KeyEvent e) {
+	}
+	
+	@Override
+	public void keyPressed(KeyEvent e) {
+		if (e.getKeyCode() == KeyEvent.VK_SHIFT) {
+			shiftPressed = true;
+		}
+	}
+	
+	@Override
+	public void keyReleased(KeyEvent e) {
+		if (e.getKeyCode() == KeyEvent.VK_SHIFT) {
+			shiftPressed = false;
+		}
+	}
+	
+	@Subscribe
+	public void onFocusChanged(FocusChanged event) {
+		// The release is never seen if shift is let go while the client is unfocused
+		if (!event.isFocused()) {
+			shiftPressed = false;
+		}
+	}
+	
+	@Subscribe
+	public void onWidgetLoaded(WidgetLoaded event) {
+		setInterfaceLoaded(event.getGroupId(), true);
+	}
+	
+	@Subscribe
+	public void onWidgetClosed(WidgetClosed event) {
+		setInterfaceLoaded(event.getGroupId(), false);
+	}
+	
+	@Subscribe
+	public void onGameStateChanged(GameStateChanged event) {
+		// Interfaces are unloaded when leaving the game
+		if (event.getGameState() == GameState.LOGIN_SCREEN || event.getGameState() == GameState.HOPPING) {
+			loadedInterfaces.clear();
+			armed = false;
+		}
+		
+		// Load the account's rules before the bank can be opened, and drop them on logout
+		if (event.getGameState() == GameState.LOGGED_IN) {
+			loadRules();
+		} else if (event.getGameState() == GameState.LOGIN_SCREEN) {
+			swapRuleStore.release();
+			swapMenuCache.clear();
+		}
+	}
+	
+	@Subscribe
+	public void onRuneScapeProfileChanged(RuneScapeProfileChanged event) {
+		// The profile is not always known yet when the game state changes to LOGGED_IN
+		if (client.getGameState() == GameState.LOGGED_IN) {
+			loadRules();
+		}
+	}
+	
+	private void loadRules() {
+		final String rsProfile = configManager.getRSProfileKey();
+		if (rsProfile == null || swapRuleStore.isLoaded(rsProfile)) {
+			return;
+		}
+		
+		// Anything still pending belongs to the rules loaded before
+		swapRuleStore.flushInBackground();
+		swapRuleStore.load(rsProfile);
+		swapRuleStore.switchProfile(configuredProfile());
+		swapMenuCache.clear();
+	}
+	
+	private void setInterfaceLoaded(int groupId, boolean loaded) {
+		if (!MenuEntryClassifier.isBankGroup(groupId)) {
+			return;
+		}
+		
+		if (loaded) {
+			loadedInterfaces.add(groupId);
+		} else {
+			loadedInterfaces.remove(groupId);
+		}
+		armed = !loadedInterfaces.isEmpty();
+		bankEntryAdded = false;
+		menuFingerprint.invalidate();
+	}
+	
 	@Subscribe
 	public void onClientTick(ClientTick clientTick) {
 		// The menu is not rebuilt when it is open, so don't swap or else it will
 		// repeatedly swap entries
+		if (!armed || eventDriven || client.getGameState() != GameState.LOGGED_IN || client.isMenuOpen()) {
+			metrics.increment(SwapMetrics.TICKS_SKIPPED);
+			return;
+		}
+		
+		final long start = System.nanoTime();
+		metrics.increment(SwapMetrics.TICKS_PROCESSED);
+		swapMenu();
+		metrics.record(SwapMetrics.CLIENT_TICK, start);
+	}
+	
+	@Subscribe
+	public void onMenuEntryAdded(MenuEntryAdded event) {
+		if (armed && eventDriven && !bankEntryAdded && MenuEntryClassifier.isBankGroup(WidgetInfo.TO_GROUP(event.getMenuEntry().getParam1()))) {
+			bankEntryAdded = true;
+		}
+	}
+	
+	@Subscribe
+	public void onPostMenuSort(PostMenuSort postMenuSort) {
+		// Skips every menu without an entry of a swappable interface
+		if (!bankEntryAdded) {
+			return;
+		}
+		bankEntryAdded = false;
+		// PostMenuSort is also posted while a menu is open, which must not be swapped
 		if (client.getGameState() != GameState.LOGGED_IN || client.isMenuOpen()) {
 			return;
 		}
 		
+		swapMenu();
+	}
+	
+	private void swapMenu() {
+		final long start = System.nanoTime();
 		MenuEntry[] menuEntries = client.getMenuEntries();
+		boolean shift = shiftModifier();
+		SwapRules rules = swapRuleStore.snapshot();
+		if (recording != null && !recording.write(menuEntries, shift)) {
+			stopRecording();
+		}
+		final boolean degraded = degradedTicks > 0;
+		if (degraded) {
+			metrics.increment(SwapMetrics.DEGRADED_TICKS);
+			if (--degradedTicks == 0) {
+				// Decide again with the whole menu on the next evaluation
+				menuFingerprint.invalidate();
+			}
+		}
 		
-		// Perform swaps
-		int idx = 0;
-		for (MenuEntry entry : menuEntries) {
-			swapMenuEntry(menuEntries, idx++, entry);
+		// The menu is rebuilt identically every tick while hovering the same thing, so
+		// repeat the last decision instead of evaluating every entry again
+		if (!menuFingerprint.update(menuEntries, shift, rules.getVersion())) {
+			final long planStart = System.nanoTime();
+			swapIndex = planSwap(menuEntries, shift, rules, degraded ? DEGRADED_SCAN_DEPTH : menuEntries.length);
+			metrics.record(SwapMetrics.RULE_LOOKUP, planStart);
+		} else {
+			metrics.increment(SwapMetrics.DECISIONS_REUSED);
+		}
+		
+		if (swapIndex != -1) {
+			applySwap(menuEntries, swapIndex);
+		}
+		final long elapsed = metrics.record(SwapMetrics.SWAP_MENU, start);
+		if (tickBudgetNanos == 0 || elapsed <= tickBudgetNanos) {
+			overBudgetStreak = 0;
+		} else if (++overBudgetStreak >= OVER_BUDGET_STREAK) {
+			// Keep the decision already made, and only look at the top of the menu when it changes
+			degradedTicks = DEGRADED_TICKS;
+			overBudgetStreak = 0;
 		}
 	}
 	
-	private void swapMenuEntry(MenuEntry[] menuEntries, int index, MenuEntry menuEntry) {
-		Boolean inventory = null;
-		if (isCorrectWidget(menuEntry, false) && config.bankCustomization()) {
-			inventory = false;
+	// Finds the entry to promote in one pass from the top of the menu down. When several entries
+	// match (e.g. stacked items), the one nearest the top wins, as it always ended up on top when
+	// each match was swapped in turn. Only the top depth entries are looked at.
+	private int planSwap(MenuEntry[] menuEntries, boolean shift, SwapRules rules, int depth) {
+		final int bottom = Math.max(0, menuEntries.length - depth);
+		for (int idx = menuEntries.length - 1; idx >= bottom; --idx) {
+			if (isSwapTarget(menuEntries[idx], idx, shift, rules)) {
+				return idx;
+			}
 		}
-		if (isCorrectWidget(menuEntry, true) && config.bankInventoryCustomization()) {
-			inventory = true;
+		return -1;
+	}
+	
+	private boolean isSwapTarget(MenuEntry menuEntry, int index, boolean shift, SwapRules rules) {
+		// OTHER is never enabled
+		final int namespace = MenuEntryClassifier.classify(menuEntry);
+		if (!namespaceEnabled[namespace]) {
+			return false;
 		}
 		
-		if (inventory != null) {
-			String configString = (shiftModifier()) ? getShiftString(inventory) : getLeftString(inventory);
-			Integer customOption = getSwapConfig(configString, menuEntry.getItemId());
-			
-			if (customOption != null && customOption.equals(index)) {
-				MenuEntry temp = menuEntries[index];
-				temp.setType(MenuAction.CC_OP);
-				menuEntries[index] = menuEntries[menuEntries.length - 1];
-				menuEntries[menuEntries.length - 1] = temp;
-				
-				client.setMenuEntries(menuEntries);
-			}
+		metrics.increment(SwapMetrics.RULE_LOOKUPS);
+		final int rule = swapRuleStore.get(rules, namespace, shift, menuEntry.getItemId());
+		if (rule != SwapRuleStore.NONE && rule == menuEntry.getIdentifier()) {
+			return true;
 		}
+		if (rule == MenuEntryClassifier.WITHDRAW_1_OP && isDefaultWithdraw1(menuEntry, namespace)) {
+			return true;
+		}
+		if (SwapRuleStore.isIndexRule(rule) && SwapRuleStore.ruleIndex(rule) == index) {
+			// Saved by an older version as a menu index; store the op of the entry it points at instead
+			swapRuleStore.set(namespace, shift, menuEntry.getItemId(), ruleOp(menuEntry, namespace));
+			return true;
+		}
+		return false;
 	}
 	
-	@Subscribe
-	public void onMenuOpened(MenuOpened event) {
-		if (client.getWidget(WidgetInfo.BANK_CONTAINER) != null || client.getWidget(WidgetInfo.GROUP_STORAGE_ITEM_CONTAINER) != null) {
-			configureClick(event, false);
-			configureClick(event, true);
+	// The op a rule stores for an entry. Withdraw-1 is stored as its own op even while it is shown as
+	// the default quantity option, so the rule still means Withdraw-1 when the default changes.
+	private static int ruleOp(MenuEntry entry, int namespace) {
+		return isDefaultWithdraw1(entry, namespace) ? MenuEntryClassifier.WITHDRAW_1_OP : entry.getIdentifier();
+	}
+	
+	// Whether the entry is Withdraw-1 shown as the default quantity option, as it is while the default is 1
+	private static boolean isDefaultWithdraw1(MenuEntry entry, int namespace) {
+		return namespace == MenuEntryClassifier.BANK && entry.getIdentifier() == MenuEntryClassifier.DEFAULT_QUANTITY_OP
+				&& entry.getOption().endsWith("-1");
+	}
+	
+	private void applySwap(MenuEntry[] menuEntries, int index) {
+		final int top = menuEntries.length - 1;
+		MenuEntry temp = menuEntries[index];
+		if (index == top && temp.getType() == MenuAction.CC_OP) {
+			// Already the left click option
+			return;
 		}
+		
+		temp.setType(MenuAction.CC_OP);
+		menuEntries[index] = menuEntries[top];
+		menuEntries[top] = temp;
+		
+		client.setMenuEntries(menuEntries);
+		metrics.increment(SwapMetrics.SWAPS_APPLIED);
 	}
 	
-	private boolean isCorrectWidget(MenuEntry entry, boolean inventory) {
-		boolean correctWidget;
+	@Subscribe
+	public void onCommandExecuted(CommandExecuted event) {
+		if (!STATS_COMMAND.equalsIgnoreCase(event.getCommand())) {
+			return;
+		}
 		
-		final int widgetGroupId = WidgetInfo.TO_GROUP(entry.getParam1());
-		if (inventory) {
-			correctWidget = bankInventoryWidgetIds.contains(widgetGroupId) && !entry.getOption().equalsIgnoreCase("examine");
-		} else {
-			correctWidget = bankWidgetIds.contains(widgetGroupId) && menuTypes.contains(entry.getType()) && !entry.getOption().equalsIgnoreCase("examine");
+		final String argument = event.getArguments().length > 0 ? event.getArguments()[0].toLowerCase() : "";
+		switch (argument) {
+			case "reset":
+				metrics.reset();
+				sendMessage("Bank swapper stats have been reset.");
+				return;
+			case "record":
+				if (recording != null) {
+					stopRecording();
+				} else {
+					recording = new MenuRecording.Writer(SwapRuleCodec.encode(swapRuleStore.snapshot().tables()), config.groupSwaps(),
+							bankCustomization, bankInventoryCustomization, MAX_RECORDING_BYTES);
+					sendMessage("Recording bank menus, enter ::" + STATS_COMMAND + " record again to stop.");
+				}
+				return;
+		}
+		
+		for (int section = 0; section < SwapMetrics.SECTION_NAMES.length; section++) {
+			sendMessage(SwapMetrics.SECTION_NAMES[section] + ": p50 " + SwapMetrics.formatNanos(metrics.percentile(section, 0.5))
+					+ ", p99 " + SwapMetrics.formatNanos(metrics.percentile(section, 0.99))
+					+ ", max " + SwapMetrics.formatNanos(metrics.max(section))
+					+ " (" + metrics.samples(section) + " samples)");
 		}
-		return correctWidget;
+		StringBuilder counters = new StringBuilder();
+		for (int counter = 0; counter < SwapMetrics.COUNTER_NAMES.length; counter++) {
+			if (counter > 0) {
+				counters.append(", ");
+			}
+			counters.append(SwapMetrics.COUNTER_NAMES[counter]).append(": ").append(metrics.get(counter));
+		}
+		sendMessage(counters.toString());
 	}
 	
-	private void configureClick(MenuOpened event, boolean inventory) {
-		if (!shiftModifier() || (!inventory && !config.bankCustomization()) || (inventory && !config.bankInventoryCustomization())) {
+	@Subscribe
+	public void onMenuOpened(MenuOpened event) {
+		if (!armed || !shiftModifier()) {
 			return;
 		}
-		String leftString = getLeftString(inventory);
-		String shiftString = getShiftString(inventory);
-		
-		MenuEntry[] entries = event.getMenuEntries();
 		
-		MenuEntry topEntry = entries[entries.length - 1];
-		int ignoreIndex = getIgnoreIndex(entries.length, getSwapConfig(shiftString, topEntry.getItemId()), topEntry.getOption());
+		final long start = System.nanoTime();
+		final MenuEntry[] entries = event.getMenuEntries();
+		// Namespaces with entries in the menu, configured in namespace order
+		int present = 0;
+		for (MenuEntry entry : entries) {
+			present |= 1 << MenuEntryClassifier.classify(entry);
+		}
+		for (int namespace = MenuEntryClassifier.OTHER + 1; namespace < MenuEntryClassifier.NAMESPACE_LIMIT; namespace++) {
+			if ((present & (1 << namespace)) != 0 && namespaceEnabled[namespace]
+					&& client.getWidget(MenuEntryClassifier.swapInterface(namespace).container) != null) {
+				configureClick(entries, namespace);
+			}
+		}
+		metrics.record(SwapMetrics.CONFIGURE_CLICK, start);
+	}
+	
+	private void configureClick(MenuEntry[] entries, int namespace) {
+		final int itemId = swapRuleStore.canonicalItemId(entries[entries.length - 1].getItemId());
+		final int rulesVersion = swapRuleStore.getVersion(itemId);
+		List<SwapOption> options = swapMenuCache.get(namespace, itemId, rulesVersion, entries);
+		if (options != null) {
+			metrics.increment(SwapMetrics.CACHE_HITS);
+		} else {
+			metrics.increment(SwapMetrics.CACHE_MISSES);
+			options = swapMenuCache.put(namespace, itemId, rulesVersion, entries, buildSwapOptions(entries, namespace));
+		}
 		
-		Integer leftIndex = getSwapConfig(leftString, topEntry.getItemId());
-		Integer shiftIndex = getSwapConfig(shiftString, topEntry.getItemId());
-		if (shiftIndex != null && leftIndex != null && shiftIndex == leftIndex) {
-			leftIndex = entries.length - 1;
+		if (compactSwapMenu) {
+			addSwapSubMenu(options);
+		} else {
+			addSwapEntries(options);
 		}
-		String shiftOption = (shiftIndex == null) ? null : entries[entries.length - 1].getOption();
-		String leftOption = (leftIndex == null) ? null : entries[leftIndex].getOption();
+	}
+	
+	private List<SwapOption> buildSwapOptions(MenuEntry[] entries, int namespace) {
+		List<SwapOption> options = new ArrayList<>();
+		
+		final int itemId = entries[entries.length - 1].getItemId();
+		final int leftOp = getSwapOp(namespace, false, itemId);
+		final int shiftOp = getSwapOp(namespace, true, itemId);
 		
-		String lastTarget = null;
 		MenuEntry lastEntry = null;
-		int shiftOff = 1;
 		for (int idx = entries.length - 1; idx >= 0; --idx) {
 			
 			MenuEntry entry = entries[idx];
-			if (ignoreIndex == idx && !entry.getOption().endsWith("-1")) {
+			if (MenuEntryClassifier.classify(entry) != namespace) {
+				continue;
+			}
+			// The default quantity op repeats one of the other options, unless the default is 1
+			if (entry.getIdentifier() == MenuEntryClassifier.DEFAULT_QUANTITY_OP && !entry.getOption().endsWith("-1")) {
 				continue;
 			}
-			boolean matchesLeft = entry.getOption().equals(leftOption);
-			boolean matchesShift = entry.getOption().equals(shiftOption);
+			final int op = ruleOp(entry, namespace);
 			
-			if (isCorrectWidget(entry, inventory)) {
-				if (leftIndex == null || !matchesLeft) {
-					int passedIndex = (matchesShift) ? shiftIndex : idx;
-					buildMenuEntry(shiftOff, "Swap left click " + entry.getOption(), entry.getTarget(), setConfig(leftString, entry, passedIndex, false));
-				}
-				
-				if (shiftIndex == null || !matchesShift) {
-					int passedIndex = (shiftIndex != null && shiftIndex == idx) ? entries.length - 1 : idx;
-					buildMenuEntry("Swap shift click " + entry.getOption(), entry.getTarget(), setConfig(shiftString, entry, passedIndex, true));
-					shiftOff++;
-				}
-				lastTarget = entry.getTarget();
-				lastEntry = entry;
+			if (op != leftOp) {
+				options.add(new SwapOption(SwapOption.LEFT, namespace, entry.getOption(), entry.getTarget(), entry.getItemId(), op, swapClicked));
+			}
+			if (op != shiftOp) {
+				options.add(new SwapOption(SwapOption.SHIFT, namespace, entry.getOption(), entry.getTarget(), entry.getItemId(), op, swapClicked));
 			}
+			lastEntry = entry;
 		}
 		if (lastEntry != null) {
-			buildMenuEntry("Reset swap", lastTarget, unsetConfig(leftString, shiftString, lastEntry));
+			options.add(new SwapOption(SwapOption.RESET, namespace, null, lastEntry.getTarget(), lastEntry.getItemId(), SwapRuleStore.NONE, resetClicked));
+		}
+		return options;
+	}
+	
+	private void addSwapEntries(List<SwapOption> options) {
+		// Shift options are inserted above the left options, which are inserted above the menu
+		int shiftOff = 1;
+		for (SwapOption option : options) {
+			switch (option.type) {
+				case SwapOption.LEFT:
+					buildMenuEntry(shiftOff, option.label, option.target, option.onClick);
+					break;
+				case SwapOption.SHIFT:
+					buildMenuEntry(option.label, option.target, option.onClick);
+					shiftOff++;
+					break;
+				case SwapOption.RESET:
+					buildMenuEntry(option.label, option.target, option.onClick);
+					break;
+			}
+		}
+	}
+	
+	// Adds a single entry whose sub menu holds the options. The children share one click handler and
+	// carry what they do in their own fields, so no closure is created per option.
+	private void addSwapSubMenu(List<SwapOption> options) {
+		if (options.isEmpty()) {
+			return;
+		}
+		
+		// Reset is always last and targets the item being configured
+		SwapOption reset = options.get(options.size() - 1);
+		Menu subMenu = client.createMenuEntry(1)
+				.setOption("Swap options")
+				.setTarget(reset.target)
+				.setType(MenuAction.RUNELITE)
+				.createSubMenu();
+		
+		for (SwapOption option : options) {
+			int flags = option.namespace << SUB_MENU_NAMESPACE_SHIFT;
+			if (option.type == SwapOption.RESET) {
+				flags |= SUB_MENU_RESET;
+			} else if (option.type == SwapOption.SHIFT) {
+				flags |= SUB_MENU_SHIFT;
+			}
+			
+			// Each child is inserted below the previous ones, so the first option is shown at the top
+			subMenu.createMenuEntry(0)
+					.setOption(option.subMenuLabel)
+					.setTarget(option.target)
+					.setType(MenuAction.RUNELITE)
+					.setIdentifier(option.op)
+					.setParam0(option.itemId)
+					.setParam1(flags)
+					.onClick(subMenuClicked);
 		}
 	}
 	
+	private void onSubMenuClicked(MenuEntry entry) {
+		final int flags = entry.getParam1();
+		final int namespace = flags >>> SUB_MENU_NAMESPACE_SHIFT;
+		if ((flags & SUB_MENU_RESET) != 0) {
+			resetSwap(namespace, entry.getTarget(), entry.getParam0());
+			return;
+		}
+		
+		final boolean shift = (flags & SUB_MENU_SHIFT) != 0;
+		final String option = entry.getOption().substring((shift ? SwapOption.SHIFT_CLICK_PREFIX : SwapOption.LEFT_CLICK_PREFIX).length());
+		setSwap(new SwapOption(shift ? SwapOption.SHIFT : SwapOption.LEFT, namespace, option, entry.getTarget(), entry.getParam0(), entry.getIdentifier()));
+	}
+	
 	private MenuEntry buildMenuEntry(String option, String target, Consumer<MenuEntry> setter) {
 		return buildMenuEntry(1, option, target, setter);
 	}
@@ -193,74 +672,61 @@ public class BankMenuEntrySwapperPlugin extends Plugin {
 				.onClick(setter);
 	}
 	
-	private Consumer<MenuEntry> setConfig(String key, MenuEntry entry, int menuIdx, boolean shift) {
-		return e -> {
-			final String message = new ChatMessageBuilder()
-					.append("The default ").append(shift ? "shift" : "left").append(" click option for '").append(Text.removeTags(entry.getTarget())).append("' ")
-					.append("has been set to '").append(entry.getOption()).append("'.")
-					.build();
-			
-			chatMessageManager.queue(QueuedMessage.builder()
-					.type(ChatMessageType.CONSOLE)
-					.runeLiteFormattedMessage(message)
-					.build());
-			
-			setSwapConfig(key, entry.getItemId(), menuIdx);
-		};
-	}
-	
-	private Consumer<MenuEntry> unsetConfig(String leftKey, String shiftKey, MenuEntry entry) {
-		return e -> {
-			final String message = new ChatMessageBuilder()
-					.append("The default left and shift click options for '").append(Text.removeTags(entry.getTarget())).append("' ")
-					.append("have been reset.")
-					.build();
-			
-			chatMessageManager.queue(QueuedMessage.builder()
-					.type(ChatMessageType.CONSOLE)
-					.runeLiteFormattedMessage(message)
-					.build());
-			
-			unsetSwapConfig(leftKey, entry.getItemId());
-			unsetSwapConfig(shiftKey, entry.getItemId());
-		};
-	}
-	
-	private Integer getSwapConfig(String key, int itemId) {
-		
-		itemId = ItemVariationMapping.map(itemId);
-		
-		String config = configManager.getConfiguration(BankMenuEntrySwapperConfig.GROUP, key + itemId);
+	private void setSwap(SwapOption option) {
+		final boolean shift = option.type == SwapOption.SHIFT;
+		final String message = new ChatMessageBuilder()
+				.append("The default ").append(shift ? "shift" : "left").append(" click option for '").append(Text.removeTags(option.target)).append("' ")
+				.append("has been set to '").append(option.option).append("'.")
+				.build();
 		
-		return (config != null) ? Integer.parseInt(config) : null;
+		sendMessage(message);
+		swapRuleStore.set(option.namespace, shift, option.itemId, option.op);
 	}
 	
-	private void setSwapConfig(String key, int itemId, int index) {
-		itemId = ItemVariationMapping.map(itemId);
+	private void resetSwap(int namespace, String target, int itemId) {
+		final String message = new ChatMessageBuilder()
+				.append("The default left and shift click options for '").append(Text.removeTags(target)).append("' ")
+				.append("have been reset.")
+				.build();
 		
-		configManager.setConfiguration(BankMenuEntrySwapperConfig.GROUP, key + itemId, index);
+		sendMessage(message);
+		swapRuleStore.unset(namespace, false, itemId);
+		swapRuleStore.unset(namespace, true, itemId);
 	}
 	
-	private void unsetSwapConfig(String key, int itemId) {
-		itemId = ItemVariationMapping.map(itemId);
+	private void stopRecording() {
+		final byte[] data = recording.finish();
+		final int frames = recording.frames();
+		recording = null;
 		
-		configManager.unsetConfiguration(BankMenuEntrySwapperConfig.GROUP, key + itemId);
-	}
-	
-	private int getIgnoreIndex(int size, Integer storedIndex, String option) {
-		return (storedIndex != null) ? storedIndex : size - 1;
+		final File file = new File(RECORDING_DIR, "menus-" + System.currentTimeMillis() + ".bmes");
+		sendMessage("Recorded " + frames + " menus to " + file + ".");
+		executor.execute(() -> {
+			try {
+				Files.createDirectories(RECORDING_DIR.toPath());
+				Files.write(file.toPath(), data);
+			} catch (IOException e) {
+				log.warn("Unable to write menu recording {}", file, e);
+			}
+		});
 	}
 	
-	private String getLeftString(boolean inventory) {
-		return (inventory) ? BANK_INVENTORY_KEY_PREFIX : BANK_KEY_PREFIX;
+	private void sendMessage(String message) {
+		chatMessageManager.queue(QueuedMessage.builder()
+				.type(ChatMessageType.CONSOLE)
+				.runeLiteFormattedMessage(message)
+				.build());
 	}
 	
-	private String getShiftString(boolean inventory) {
-		return (inventory) ? BANK_INVENTORY_SHIFT_KEY_PREFIX : BANK_SHIFT_KEY_PREFIX;
+	// The op a rule swaps to, or NONE. A rule still holding a menu index is not resolved until the
+	// tick path sees the unswapped menu, so it does not hide any options here.
+	private int getSwapOp(int namespace, boolean shift, int itemId) {
+		int rule = swapRuleStore.get(namespace, shift, itemId);
+		return SwapRuleStore.isIndexRule(rule) ? SwapRuleStore.NONE : rule;
 	}
 	
 	boolean shiftModifier() {
-		return client.isKeyPressed(KeyCode.KC_SHIFT);
+		return shiftPressed;
 	}
 	
 }
@@ -0,0 +1,248 @@
+package com.bank.swapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Swap rules that cover groups of items, written one per line as
+ * {@code <items> = [shift] <option>}, where items is a comma separated list of item ids, id ranges
+ * ({@code 1704-1712}) and name patterns ({@code *potion*}). The option also decides the table: a
+ * withdraw option applies in the bank, a deposit option in the bank inventory. Items are matched by
+ * their own id, not the variation mapped id stored rules are keyed by, so a range covers exactly the
+ * ids written and each variant is matched by its own name.
+ * <p>
+ * The ids and ranges of every line are compiled into bitsets. Lines are tried in order and the first
+ * match wins, and the answer for each item is memoized, so an item is resolved at most once and every
+ * later lookup is an array read. Name patterns need the item's name, which is looked up on the client
+ * thread, so lookups must only be made on the client thread.
+ */
+@Slf4j
+final class GroupRules {
+	static final GroupRules EMPTY = new GroupRules(new ArrayList<>(), id -> null);
+	
+	// Ops of the fixed quantity options, as used by the client
+	private static final Map<String, Integer> BANK_OPS = new HashMap<>();
+	private static final Map<String, Integer> BANK_INVENTORY_OPS = new HashMap<>();
+	// Marks an item whose rule has not been resolved yet
+	private static final int UNRESOLVED = -2;
+	// Largest item id a range may cover
+	private static final int MAX_ITEM_ID = 1 << 20;
+	
+	static {
+		BANK_OPS.put("withdraw-1", MenuEntryClassifier.WITHDRAW_1_OP);
+		BANK_OPS.put("withdraw-5", 3);
+		BANK_OPS.put("withdraw-10", 4);
+		BANK_OPS.put("withdraw-x", 6);
+		BANK_OPS.put("withdraw-all", 7);
+		BANK_OPS.put("withdraw-all-but-1", 8);
+		BANK_INVENTORY_OPS.put("deposit-1", 3);
+		BANK_INVENTORY_OPS.put("deposit-5", 4);
+		BANK_INVENTORY_OPS.put("deposit-10", 5);
+		BANK_INVENTORY_OPS.put("deposit-x", 6);
+		BANK_INVENTORY_OPS.put("deposit-all", 8);
+	}
+	
+	// Lines by table, in the order they were written
+	private final Group[][] groups = new Group[SwapRules.TABLES][];
+	private final IntFunction<String> itemNames;
+	// Resolved rule by item id for each table, or UNRESOLVED
+	private final int[][] resolved = new int[SwapRules.TABLES][0];
+	
+	private GroupRules(List<Group> lines, IntFunction<String> itemNames) {
+		this.itemNames = itemNames;
+		for (int table = 0; table < groups.length; table++) {
+			final int t = table;
+			groups[table] = lines.stream().filter(group -> group.table == t).toArray(Group[]::new);
+		}
+	}
+	
+	/**
+	 * Compiles the rules, skipping any line that cannot be parsed.
+	 *
+	 * @param itemNames gives the name of an item id, and is only called on the client thread
+	 */
+	static GroupRules compile(String text, IntFunction<String> itemNames) {
+		if (text == null || text.trim().isEmpty()) {
+			return EMPTY;
+		}
+		
+		List<Group> lines = new ArrayList<>();
+		for (String line : text.split("\n")) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			
+			try {
+				lines.add(parse(line));
+			} catch (IllegalArgumentException e) {
+				log.warn("Ignoring group swap '{}': {}", line, e.getMessage());
+			}
+		}
+		return new GroupRules(lines, itemNames);
+	}
+	
+	/**
+	 * The op of the first line covering the item, or {@link SwapRuleStore#NONE}.
+	 */
+	int get(int table, int itemId) {
+		Group[] lines = groups[table];
+		if (lines.length == 0 || itemId < 0) {
+			return SwapRuleStore.NONE;
+		}
+		
+		int[] rules = resolved[table];
+		if (itemId >= rules.length) {
+			int length = rules.length;
+			int size = Math.max(itemId + 1, length * 2);
+			rules = Arrays.copyOf(rules, size);
+			Arrays.fill(rules, length, size, UNRESOLVED);
+			resolved[table] = rules;
+		}
+		
+		int rule = rules[itemId];
+		if (rule == UNRESOLVED) {
+			rule = resolve(lines, itemId);
+			rules[itemId] = rule;
+		}
+		return rule;
+	}
+	
+	private int resolve(Group[] lines, int itemId) {
+		String name = null;
+		for (Group group : lines) {
+			if (group.containsId(itemId)) {
+				return group.op;
+			}
+			if (group.patterns.length > 0) {
+				if (name == null) {
+					name = itemNames.apply(itemId);
+					if (name == null) {
+						continue;
+					}
+					name = name.toLowerCase(Locale.ROOT);
+				}
+				for (Pattern pattern : group.patterns) {
+					if (pattern.matcher(name).matches()) {
+						return group.op;
+					}
+				}
+			}
+		}
+		return SwapRuleStore.NONE;
+	}
+	
+	private static Group parse(String line) {
+		int equals = line.indexOf('=');
+		if (equals == -1) {
+			throw new IllegalArgumentException("expected <items> = [shift] <option>");
+		}
+		
+		String option = line.substring(equals + 1).trim().toLowerCase(Locale.ROOT);
+		boolean shift = option.startsWith("shift ");
+		if (shift) {
+			option = option.substring("shift ".length()).trim();
+		}
+		
+		boolean inventory;
+		Integer op = BANK_OPS.get(option);
+		if (op != null) {
+			inventory = false;
+		} else {
+			op = BANK_INVENTORY_OPS.get(option);
+			if (op == null) {
+				throw new IllegalArgumentException("unknown option " + option);
+			}
+			inventory = true;
+		}
+		
+		long[] ids = new long[0];
+		List<Pattern> patterns = new ArrayList<>();
+		for (String item : line.substring(0, equals).split(",")) {
+			item = item.trim();
+			if (item.isEmpty()) {
+				continue;
+			}
+			
+			int dash = item.indexOf('-', 1);
+			if (Character.isDigit(item.charAt(0)) && isRange(item)) {
+				int first = Integer.parseInt(dash == -1 ? item : item.substring(0, dash).trim());
+				int last = dash == -1 ? first : Integer.parseInt(item.substring(dash + 1).trim());
+				if (last < first || last > MAX_ITEM_ID) {
+					throw new IllegalArgumentException("invalid id range " + item);
+				}
+				ids = set(ids, first, last);
+			} else {
+				patterns.add(glob(item.toLowerCase(Locale.ROOT)));
+			}
+		}
+		
+		if (ids.length == 0 && patterns.isEmpty()) {
+			throw new IllegalArgumentException("no items");
+		}
+		final int namespace = inventory ? MenuEntryClassifier.BANK_INVENTORY : MenuEntryClassifier.BANK;
+		return new Group(SwapRules.table(namespace, shift), op, ids, patterns.toArray(new Pattern[0]));
+	}
+	
+	private static boolean isRange(String item) {
+		for (int i = 0; i < item.length(); i++) {
+			char c = item.charAt(i);
+			if (!Character.isDigit(c) && c != '-' && c != ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static long[] set(long[] bits, int first, int last) {
+		if ((last >>> 6) >= bits.length) {
+			bits = Arrays.copyOf(bits, (last >>> 6) + 1);
+		}
+		for (int id = first; id <= last; id++) {
+			bits[id >>> 6] |= 1L << id;
+		}
+		return bits;
+	}
+	
+	private static Pattern glob(String glob) {
+		String[] parts = glob.split("\\*", -1);
+		StringBuilder regex = new StringBuilder();
+		for (int i = 0; i < parts.length; i++) {
+			if (i > 0) {
+				regex.append(".*");
+			}
+			if (!parts[i].isEmpty()) {
+				regex.append(Pattern.quote(parts[i]));
+			}
+		}
+		return Pattern.compile(regex.toString());
+	}
+	
+	private static final class Group {
+		final int table;
+		final int op;
+		// Bitset of the ids and ranges
+		final long[] ids;
+		final Pattern[] patterns;
+		
+		Group(int table, int op, long[] ids, Pattern[] patterns) {
+			this.table = table;
+			this.op = op;
+			this.ids = ids;
+			this.patterns = patterns;
+		}
+		
+		boolean containsId(int itemId) {
+			final int word = itemId >>> 6;
+			return word < ids.length && (ids[word] & (1L << itemId)) != 0;
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package com.bank.swapper;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from non-negative int keys to int values, used to keep
+ * swap lookups on the client tick free of boxing.
+ */
+final class IntIntMap {
+	private static final int EMPTY = -1;
+	
+	private int[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+	
+	IntIntMap() {
+		this(16);
+	}
+	
+	IntIntMap(int expectedSize) {
+		allocate(capacityFor(expectedSize));
+	}
+	
+	int get(int key, int missing) {
+		if (key < 0) {
+			return missing;
+		}
+		
+		int idx = slot(key);
+		int k;
+		while ((k = keys[idx]) != EMPTY) {
+			if (k == key) {
+				return values[idx];
+			}
+			idx = (idx + 1) & mask;
+		}
+		return missing;
+	}
+	
+	boolean containsKey(int key) {
+		return indexOf(key) >= 0;
+	}
+	
+	void put(int key, int value) {
+		if (key < 0) {
+			throw new IllegalArgumentException("Negative keys are not supported: " + key);
+		}
+		
+		int idx = slot(key);
+		int k;
+		while ((k = keys[idx]) != EMPTY) {
+			if (k == key) {
+				values[idx] = value;
+				return;
+			}
+			idx = (idx + 1) & mask;
+		}
+		
+		keys[idx] = key;
+		values[idx] = value;
+		if (++size * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+	}
+	
+	void remove(int key) {
+		int gap = indexOf(key);
+		if (gap < 0) {
+			return;
+		}
+		
+		// Shift back any entries in the same probe run so lookups never stop early
+		int next = (gap + 1) & mask;
+		while (keys[next] != EMPTY) {
+			int home = slot(keys[next]);
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[gap] = EMPTY;
+		--size;
+	}
+	
+	void clear() {
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	boolean isEmpty() {
+		return size == 0;
+	}
+	
+	void forEach(Visitor visitor) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != EMPTY) {
+				visitor.visit(keys[i], values[i]);
+			}
+		}
+	}
+	
+	IntIntMap copy() {
+		IntIntMap copy = new IntIntMap(0);
+		copy.keys = keys.clone();
+		copy.values = values.clone();
+		copy.mask = mask;
+		copy.size = size;
+		return copy;
+	}
+	
+	private int indexOf(int key) {
+		if (key < 0) {
+			return -1;
+		}
+		
+		int idx = slot(key);
+		int k;
+		while ((k = keys[idx]) != EMPTY) {
+			if (k == key) {
+				return idx;
+			}
+			idx = (idx + 1) & mask;
+		}
+		return -1;
+	}
+	
+	private int slot(int key) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+	
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+	
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		Arrays.fill(keys, EMPTY);
+	}
+	
+	private static int capacityFor(int expectedSize) {
+		int capacity = 8;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+	
+	interface Visitor {
+		void visit(int key, int value);
+	}
+}
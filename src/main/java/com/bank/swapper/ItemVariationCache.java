@@ -0,0 +1,41 @@
+package com.bank.swapper;
+
+import java.util.Arrays;
+
+import net.runelite.client.game.ItemVariationMapping;
+
+/**
+ * Dense memo in front of {@link ItemVariationMapping}, so an item that has been hovered before
+ * resolves to its canonical id with a single array read.
+ */
+final class ItemVariationCache {
+	private static final int UNMAPPED = -1;
+	
+	// Canonical id by item id, or UNMAPPED. Racing writers can only store the same value, and a
+	// write lost to a concurrent resize is recomputed on the next lookup.
+	private volatile int[] canonicalIds = new int[0];
+	
+	int map(int itemId) {
+		if (itemId < 0) {
+			return itemId;
+		}
+		
+		int[] ids = canonicalIds;
+		if (itemId < ids.length) {
+			int canonicalId = ids[itemId];
+			if (canonicalId != UNMAPPED) {
+				return canonicalId;
+			}
+		} else {
+			int length = ids.length;
+			int size = Math.max(itemId + 1, length * 2);
+			ids = Arrays.copyOf(ids, size);
+			Arrays.fill(ids, length, size, UNMAPPED);
+			canonicalIds = ids;
+		}
+		
+		int canonicalId = ItemVariationMapping.map(itemId);
+		ids[itemId] = canonicalId;
+		return canonicalId;
+	}
+}
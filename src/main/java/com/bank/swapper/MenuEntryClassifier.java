@@ -0,0 +1,86 @@
+package com.bank.swapper;
+
+import java.util.Arrays;
+
+import net.runelite.api.MenuEntry;
+import net.runelite.api.widgets.WidgetInfo;
+
+/**
+ * Decides which rule namespace, if any, a menu entry can be swapped in. The {@link SwapInterface} of a
+ * widget group is read from a table indexed by group id and Examine is recognised by its op, so
+ * classifying an entry is one array read and never allocates, however many interfaces are supported.
+ */
+final class MenuEntryClassifier {
+	// Rule namespaces, one per SwapInterface; each has its own left and shift click rules
+	static final int OTHER = 0;
+	static final int BANK = SwapInterface.BANK.namespace;
+	static final int BANK_INVENTORY = SwapInterface.BANK_INVENTORY.namespace;
+	static final int GROUP_STORAGE = SwapInterface.GROUP_STORAGE.namespace;
+	static final int GROUP_STORAGE_INVENTORY = SwapInterface.GROUP_STORAGE_INVENTORY.namespace;
+	// One past the highest namespace
+	static final int NAMESPACE_LIMIT = SwapInterface.values().length + 1;
+	
+	// Op of the withdraw/deposit option for the selected default quantity
+	static final int DEFAULT_QUANTITY_OP = 1;
+	// Op of Withdraw-1 in the bank, which the client hides while the default quantity is 1
+	static final int WITHDRAW_1_OP = 2;
+	// Op of the Examine option on item components
+	static final int EXAMINE_OP = 10;
+	
+	// Namespace by widget group id
+	private static final byte[] NAMESPACES = namespaces();
+	// Interface by namespace, null for OTHER
+	private static final SwapInterface[] INTERFACES = new SwapInterface[NAMESPACE_LIMIT];
+	
+	static {
+		for (SwapInterface swapInterface : SwapInterface.values()) {
+			INTERFACES[swapInterface.namespace] = swapInterface;
+		}
+	}
+	
+	private MenuEntryClassifier() {
+	}
+	
+	/**
+	 * The namespace the entry can be swapped in, or {@link #OTHER}.
+	 */
+	static int classify(MenuEntry entry) {
+		final int namespace = namespace(WidgetInfo.TO_GROUP(entry.getParam1()));
+		if (namespace == OTHER || entry.getIdentifier() == EXAMINE_OP) {
+			return OTHER;
+		}
+		return INTERFACES[namespace].types.contains(entry.getType()) ? namespace : OTHER;
+	}
+	
+	/**
+	 * The namespace of the entries of a widget group, or {@link #OTHER}.
+	 */
+	static int namespace(int widgetGroupId) {
+		return widgetGroupId >= 0 && widgetGroupId < NAMESPACES.length ? NAMESPACES[widgetGroupId] : OTHER;
+	}
+	
+	/**
+	 * The interface of a namespace other than {@link #OTHER}.
+	 */
+	static SwapInterface swapInterface(int namespace) {
+		return INTERFACES[namespace];
+	}
+	
+	static boolean isBankGroup(int widgetGroupId) {
+		return namespace(widgetGroupId) != OTHER;
+	}
+	
+	private static byte[] namespaces() {
+		int max = 0;
+		for (SwapInterface swapInterface : SwapInterface.values()) {
+			max = Math.max(max, swapInterface.groupId);
+		}
+		
+		byte[] namespaces = new byte[max + 1];
+		Arrays.fill(namespaces, (byte) OTHER);
+		for (SwapInterface swapInterface : SwapInterface.values()) {
+			namespaces[swapInterface.groupId] = (byte) swapInterface.namespace;
+		}
+		return namespaces;
+	}
+}
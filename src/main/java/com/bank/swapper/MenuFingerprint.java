@@ -0,0 +1,62 @@
+package com.bank.swapper;
+
+import java.util.Arrays;
+
+import net.runelite.api.MenuEntry;
+
+/**
+ * Remembers the shape of the last menu seen on the client tick (entry count, types, identifiers,
+ * param1 and item ids) together with the modifier state and rule version it was evaluated with.
+ * The fields compared are exact, so a match can never reuse a decision made for a different menu.
+ */
+final class MenuFingerprint {
+	private int size = -1;
+	private boolean shift;
+	private int rulesVersion;
+	private int[] types = new int[0];
+	private int[] identifiers = new int[0];
+	private int[] params = new int[0];
+	private int[] itemIds = new int[0];
+	
+	/**
+	 * Compares the menu against the stored fingerprint and records it if it differs.
+	 *
+	 * @return true if the menu is unchanged since the last call
+	 */
+	boolean update(MenuEntry[] entries, boolean shift, int rulesVersion) {
+		boolean unchanged = size == entries.length && this.shift == shift && this.rulesVersion == rulesVersion;
+		if (types.length < entries.length) {
+			int capacity = Math.max(entries.length, types.length * 2);
+			types = Arrays.copyOf(types, capacity);
+			identifiers = Arrays.copyOf(identifiers, capacity);
+			params = Arrays.copyOf(params, capacity);
+			itemIds = Arrays.copyOf(itemIds, capacity);
+		}
+		
+		for (int i = 0; i < entries.length; i++) {
+			MenuEntry entry = entries[i];
+			int type = entry.getType().getId();
+			int identifier = entry.getIdentifier();
+			int param1 = entry.getParam1();
+			int itemId = entry.getItemId();
+			if (unchanged && types[i] == type && identifiers[i] == identifier && params[i] == param1 && itemIds[i] == itemId) {
+				continue;
+			}
+			
+			unchanged = false;
+			types[i] = type;
+			identifiers[i] = identifier;
+			params[i] = param1;
+			itemIds[i] = itemId;
+		}
+		
+		size = entries.length;
+		this.shift = shift;
+		this.rulesVersion = rulesVersion;
+		return unchanged;
+	}
+	
+	void invalidate() {
+		size = -1;
+	}
+}
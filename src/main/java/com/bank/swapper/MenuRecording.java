@@ -0,0 +1,291 @@
+package com.bank.swapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.runelite.api.MenuEntry;
+
+/**
+ * A recording of the menus the plugin evaluated during a real session, for replaying them offline
+ * (see {@code MenuReplay} in the jmh source set).
+ * <p>
+ * The format is a magic number and version, a header with the swap rules (as encoded by
+ * {@link SwapRuleCodec}), group swaps text and toggles in effect when recording started, then one
+ * frame per evaluated menu: a flags byte, and unless the frame repeats the previous menu, the entry
+ * count and each entry's option, target, type, identifier, param0, param1 and item id. Numbers are
+ * zigzag varints, and a string is written once and then referred to by index, so hovering over the
+ * bank records a byte per tick.
+ */
+final class MenuRecording {
+	private static final int MAGIC = 0x424D4553;
+	// Version 1 recordings have no group swaps
+	private static final int VERSION = 2;
+	
+	// Flags of the header
+	private static final int BANK_CUSTOMIZATION = 1;
+	private static final int BANK_INVENTORY_CUSTOMIZATION = 1 << 1;
+	
+	// Flags of a frame
+	private static final int SHIFT = 1;
+	private static final int REPEAT = 1 << 1;
+	
+	final String rules;
+	// Text of the group swaps config
+	final String groupSwaps;
+	final boolean bankCustomization;
+	final boolean bankInventoryCustomization;
+	final List<Frame> frames;
+	
+	private MenuRecording(String rules, String groupSwaps, boolean bankCustomization, boolean bankInventoryCustomization, List<Frame> frames) {
+		this.rules = rules;
+		this.groupSwaps = groupSwaps;
+		this.bankCustomization = bankCustomization;
+		this.bankInventoryCustomization = bankInventoryCustomization;
+		this.frames = frames;
+	}
+	
+	/**
+	 * @throws IOException if the stream cannot be read or is not a menu recording
+	 */
+	static MenuRecording read(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(stream);
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a menu recording");
+		}
+		final int version = readVarint(in);
+		if (version != 1 && version != VERSION) {
+			throw new IOException("Unknown menu recording version " + version);
+		}
+		
+		final int flags = in.read();
+		final List<String> strings = new ArrayList<>();
+		final String rules = readString(in, strings);
+		final String groupSwaps = version == 1 ? "" : readString(in, strings);
+		final List<Frame> frames = new ArrayList<>();
+		Frame previous = null;
+		for (int frameFlags = in.read(); frameFlags != -1; frameFlags = in.read()) {
+			final boolean shift = (frameFlags & SHIFT) != 0;
+			if ((frameFlags & REPEAT) != 0) {
+				if (previous == null) {
+					throw new IOException("Repeated frame without a menu");
+				}
+				previous = new Frame(shift, previous);
+			} else {
+				Frame frame = new Frame(shift, readVarint(in));
+				for (int i = 0; i < frame.size(); i++) {
+					frame.options[i] = readString(in, strings);
+					frame.targets[i] = readString(in, strings);
+					frame.types[i] = readVarint(in);
+					frame.identifiers[i] = readVarint(in);
+					frame.param0s[i] = readVarint(in);
+					frame.param1s[i] = readVarint(in);
+					frame.itemIds[i] = readVarint(in);
+				}
+				previous = frame;
+			}
+			frames.add(previous);
+		}
+		return new MenuRecording(rules, groupSwaps, (flags & BANK_CUSTOMIZATION) != 0, (flags & BANK_INVENTORY_CUSTOMIZATION) != 0, frames);
+	}
+	
+	/**
+	 * One evaluated menu, bottom entry first as in {@link net.runelite.api.Client#getMenuEntries()}.
+	 */
+	static final class Frame {
+		final boolean shift;
+		final String[] options;
+		final String[] targets;
+		final int[] types;
+		final int[] identifiers;
+		final int[] param0s;
+		final int[] param1s;
+		final int[] itemIds;
+		
+		Frame(boolean shift, int size) {
+			this.shift = shift;
+			options = new String[size];
+			targets = new String[size];
+			types = new int[size];
+			identifiers = new int[size];
+			param0s = new int[size];
+			param1s = new int[size];
+			itemIds = new int[size];
+		}
+		
+		// Shares the menu of another frame
+		private Frame(boolean shift, Frame menu) {
+			this.shift = shift;
+			options = menu.options;
+			targets = menu.targets;
+			types = menu.types;
+			identifiers = menu.identifiers;
+			param0s = menu.param0s;
+			param1s = menu.param1s;
+			itemIds = menu.itemIds;
+		}
+		
+		static Frame of(MenuEntry[] entries, boolean shift) {
+			Frame frame = new Frame(shift, entries.length);
+			for (int i = 0; i < entries.length; i++) {
+				MenuEntry entry = entries[i];
+				frame.options[i] = entry.getOption();
+				frame.targets[i] = entry.getTarget();
+				frame.types[i] = entry.getType().getId();
+				frame.identifiers[i] = entry.getIdentifier();
+				frame.param0s[i] = entry.getParam0();
+				frame.param1s[i] = entry.getParam1();
+				frame.itemIds[i] = entry.getItemId();
+			}
+			return frame;
+		}
+		
+		int size() {
+			return options.length;
+		}
+		
+		boolean sameMenu(Frame other) {
+			return Arrays.equals(options, other.options)
+					&& Arrays.equals(targets, other.targets)
+					&& Arrays.equals(types, other.types)
+					&& Arrays.equals(identifiers, other.identifiers)
+					&& Arrays.equals(param0s, other.param0s)
+					&& Arrays.equals(param1s, other.param1s)
+					&& Arrays.equals(itemIds, other.itemIds);
+		}
+	}
+	
+	/**
+	 * Records frames in memory until {@link #finish()}. Not thread safe; used on the client thread.
+	 */
+	static final class Writer {
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		private final Map<String, Integer> strings = new HashMap<>();
+		private final int maxBytes;
+		private Frame previous;
+		private int frames;
+		
+		Writer(String rules, String groupSwaps, boolean bankCustomization, boolean bankInventoryCustomization, int maxBytes) {
+			this.maxBytes = maxBytes;
+			writeInt(MAGIC);
+			writeVarint(out, VERSION);
+			out.write((bankCustomization ? BANK_CUSTOMIZATION : 0) | (bankInventoryCustomization ? BANK_INVENTORY_CUSTOMIZATION : 0));
+			writeString(rules);
+			writeString(groupSwaps);
+		}
+		
+		/**
+		 * Records a menu as the client built it, before any swap.
+		 *
+		 * @return false once the recording is full, in which case nothing was recorded
+		 */
+		boolean write(MenuEntry[] entries, boolean shift) {
+			if (out.size() >= maxBytes) {
+				return false;
+			}
+			
+			final Frame frame = Frame.of(entries, shift);
+			final int flags = shift ? SHIFT : 0;
+			if (previous != null && previous.sameMenu(frame)) {
+				out.write(flags | REPEAT);
+			} else {
+				out.write(flags);
+				writeVarint(out, frame.size());
+				for (int i = 0; i < frame.size(); i++) {
+					writeString(frame.options[i]);
+					writeString(frame.targets[i]);
+					writeVarint(out, frame.types[i]);
+					writeVarint(out, frame.identifiers[i]);
+					writeVarint(out, frame.param0s[i]);
+					writeVarint(out, frame.param1s[i]);
+					writeVarint(out, frame.itemIds[i]);
+				}
+				previous = frame;
+			}
+			++frames;
+			return true;
+		}
+		
+		int frames() {
+			return frames;
+		}
+		
+		byte[] finish() {
+			return out.toByteArray();
+		}
+		
+		private void writeInt(int value) {
+			out.write(value >>> 24);
+			out.write(value >>> 16);
+			out.write(value >>> 8);
+			out.write(value);
+		}
+		
+		// Strings are written in full once, as the next index followed by the UTF-8 bytes
+		private void writeString(String value) {
+			if (value == null) {
+				value = "";
+			}
+			Integer index = strings.get(value);
+			if (index != null) {
+				writeVarint(out, index);
+				return;
+			}
+			
+			writeVarint(out, strings.size());
+			strings.put(value, strings.size());
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeVarint(out, bytes.length);
+			out.write(bytes, 0, bytes.length);
+		}
+	}
+	
+	private static String readString(DataInputStream in, List<String> strings) throws IOException {
+		final int index = readVarint(in);
+		if (index < strings.size()) {
+			return strings.get(index);
+		}
+		if (index != strings.size()) {
+			throw new IOException("Invalid string index " + index);
+		}
+		
+		byte[] bytes = new byte[readVarint(in)];
+		in.readFully(bytes);
+		String value = new String(bytes, StandardCharsets.UTF_8);
+		strings.add(value);
+		return value;
+	}
+	
+	private static void writeVarint(ByteArrayOutputStream out, int value) {
+		// Zigzag, so the -1 of an absent item id stays one byte
+		int zigzag = (value << 1) ^ (value >> 31);
+		while ((zigzag & ~0x7F) != 0) {
+			out.write((zigzag & 0x7F) | 0x80);
+			zigzag >>>= 7;
+		}
+		out.write(zigzag);
+	}
+	
+	private static int readVarint(DataInputStream in) throws IOException {
+		int zigzag = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.read();
+			if (b == -1) {
+				throw new EOFException("Truncated menu recording");
+			}
+			zigzag |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return (zigzag >>> 1) ^ -(zigzag & 1);
+			}
+		}
+		throw new IOException("Malformed varint in menu recording");
+	}
+}
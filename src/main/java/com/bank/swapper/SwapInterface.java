@@ -0,0 +1,46 @@
+package com.bank.swapper;
+
+import java.util.EnumSet;
+
+import net.runelite.api.MenuAction;
+import net.runelite.api.widgets.WidgetID;
+import net.runelite.api.widgets.WidgetInfo;
+
+/**
+ * The item interfaces swaps can be set in. Each declares the widget group of its entries, the entry
+ * types that can be swapped and the container shown while it is open; its rule namespace follows from
+ * its position, so new interfaces go at the end or the stored rules of the others move.
+ */
+enum SwapInterface {
+	BANK(WidgetID.BANK_GROUP_ID, WidgetInfo.BANK_CONTAINER, false, Types.ITEM_OPS),
+	// The inventories swap entries of any type
+	BANK_INVENTORY(WidgetID.BANK_INVENTORY_GROUP_ID, WidgetInfo.BANK_CONTAINER, true, Types.ALL),
+	GROUP_STORAGE(WidgetID.GROUP_STORAGE_GROUP_ID, WidgetInfo.GROUP_STORAGE_ITEM_CONTAINER, false, Types.ITEM_OPS),
+	GROUP_STORAGE_INVENTORY(WidgetID.GROUP_STORAGE_INVENTORY_GROUP_ID, WidgetInfo.GROUP_STORAGE_ITEM_CONTAINER, true, Types.ALL),
+	DEPOSIT_BOX(WidgetID.DEPOSIT_BOX_GROUP_ID, WidgetInfo.DEPOSIT_BOX_INVENTORY_ITEMS_CONTAINER, true, Types.ITEM_OPS),
+	SEED_VAULT(WidgetID.SEED_VAULT_GROUP_ID, WidgetInfo.SEED_VAULT_ITEM_CONTAINER, false, Types.ITEM_OPS),
+	SEED_VAULT_INVENTORY(WidgetID.SEED_VAULT_INVENTORY_GROUP_ID, WidgetInfo.SEED_VAULT_ITEM_CONTAINER, true, Types.ITEM_OPS);
+	
+	final int groupId;
+	// Shown while the interface is open
+	final WidgetInfo container;
+	// Whether the entries deposit items, so swapping follows the bank inventory toggle rather than the bank one
+	final boolean deposits;
+	final EnumSet<MenuAction> types;
+	// MenuEntryClassifier namespace of the rules
+	final int namespace;
+	
+	SwapInterface(int groupId, WidgetInfo container, boolean deposits, EnumSet<MenuAction> types) {
+		this.groupId = groupId;
+		this.container = container;
+		this.deposits = deposits;
+		this.types = types;
+		this.namespace = ordinal() + 1;
+	}
+	
+	// Enum constants can't refer to static fields of their own enum in their constructors
+	private static final class Types {
+		static final EnumSet<MenuAction> ITEM_OPS = EnumSet.of(MenuAction.CC_OP, MenuAction.CC_OP_LOW_PRIORITY);
+		static final EnumSet<MenuAction> ALL = EnumSet.allOf(MenuAction.class);
+	}
+}
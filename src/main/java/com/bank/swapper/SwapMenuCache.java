@@ -0,0 +1,93 @@
+package com.bank.swapper;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import net.runelite.api.MenuEntry;
+
+/**
+ * The swap options last built for recently configured items, so opening the menu on the same item
+ * again reuses them, labels and click handlers included. An entry is only used while the item's rules
+ * are unchanged and the menu has the same entries it was built from: the same ops, param1s and item
+ * ids, and equal option text.
+ */
+final class SwapMenuCache {
+	private static final int CAPACITY = 64;
+	
+	private final Map<Long, CachedMenu> menus = new LinkedHashMap<Long, CachedMenu>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, CachedMenu> eldest) {
+			return size() > CAPACITY;
+		}
+	};
+	
+	/**
+	 * @return the cached options, or null if none are cached for this item and menu
+	 */
+	List<SwapOption> get(int namespace, int itemId, int rulesVersion, MenuEntry[] entries) {
+		CachedMenu menu = menus.get(key(namespace, itemId));
+		if (menu == null || menu.rulesVersion != rulesVersion || !menu.matches(entries)) {
+			return null;
+		}
+		return menu.swapOptions;
+	}
+	
+	List<SwapOption> put(int namespace, int itemId, int rulesVersion, MenuEntry[] entries, List<SwapOption> swapOptions) {
+		CachedMenu menu = new CachedMenu(rulesVersion, entries, Collections.unmodifiableList(swapOptions));
+		menus.put(key(namespace, itemId), menu);
+		return menu.swapOptions;
+	}
+	
+	void clear() {
+		menus.clear();
+	}
+	
+	private static long key(int namespace, int itemId) {
+		return ((long) itemId << 8) | namespace;
+	}
+	
+	private static final class CachedMenu {
+		// Int fields compared per entry
+		private static final int FIELDS = 3;
+		
+		final int rulesVersion;
+		// Op, param1 and item id of each entry
+		final int[] entries;
+		// Option text can change for the same op, e.g. the last Withdraw-X amount, and is in the labels
+		final String[] options;
+		final List<SwapOption> swapOptions;
+		
+		CachedMenu(int rulesVersion, MenuEntry[] entries, List<SwapOption> swapOptions) {
+			this.rulesVersion = rulesVersion;
+			this.entries = new int[entries.length * FIELDS];
+			this.options = new String[entries.length];
+			for (int i = 0; i < entries.length; i++) {
+				final MenuEntry entry = entries[i];
+				this.entries[i * FIELDS] = entry.getIdentifier();
+				this.entries[i * FIELDS + 1] = entry.getParam1();
+				this.entries[i * FIELDS + 2] = entry.getItemId();
+				this.options[i] = entry.getOption();
+			}
+			this.swapOptions = swapOptions;
+		}
+		
+		boolean matches(MenuEntry[] entries) {
+			if (entries.length * FIELDS != this.entries.length) {
+				return false;
+			}
+			for (int i = 0; i < entries.length; i++) {
+				final MenuEntry entry = entries[i];
+				if (this.entries[i * FIELDS] != entry.getIdentifier()
+						|| this.entries[i * FIELDS + 1] != entry.getParam1()
+						|| this.entries[i * FIELDS + 2] != entry.getItemId()
+						|| !Objects.equals(options[i], entry.getOption())) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package com.bank.swapper;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.inject.Singleton;
+
+/**
+ * Counters and latency histograms of the work the plugin does on the client thread, shown by the
+ * stats overlay and the {@code ::bmes} command. Everything is recorded on the client thread into
+ * preallocated arrays, so recording never allocates or locks.
+ * <p>
+ * Latencies are kept in log-linear buckets (eight per power of two), so a percentile is accurate to
+ * within an eighth of its value.
+ */
+@Singleton
+class SwapMetrics {
+	// Timed sections
+	static final int CLIENT_TICK = 0;
+	static final int SWAP_MENU = 1;
+	static final int RULE_LOOKUP = 2;
+	static final int CONFIGURE_CLICK = 3;
+	static final String[] SECTION_NAMES = {"Client tick", "Swap menu", "Rule lookup", "Configure click"};
+	
+	// Counters
+	static final int TICKS_PROCESSED = 0;
+	static final int TICKS_SKIPPED = 1;
+	static final int DECISIONS_REUSED = 2;
+	static final int SWAPS_APPLIED = 3;
+	static final int RULE_LOOKUPS = 4;
+	static final int CACHE_HITS = 5;
+	static final int CACHE_MISSES = 6;
+	static final int CONFIG_READS = 7;
+	static final int DEGRADED_TICKS = 8;
+	static final String[] COUNTER_NAMES = {
+			"Ticks processed", "Ticks skipped", "Decisions reused", "Swaps applied", "Rule lookups", "Cache hits", "Cache misses", "Config reads",
+			"Degraded ticks"
+	};
+	
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+	
+	private final long[] counters = new long[COUNTER_NAMES.length];
+	private final long[][] histograms = new long[SECTION_NAMES.length][BUCKETS];
+	private final long[] samples = new long[SECTION_NAMES.length];
+	private final long[] max = new long[SECTION_NAMES.length];
+	
+	void increment(int counter) {
+		++counters[counter];
+	}
+	
+	long get(int counter) {
+		return counters[counter];
+	}
+	
+	/**
+	 * Records the time since {@code start}, a value of {@link System#nanoTime()}.
+	 *
+	 * @return the time recorded, in nanoseconds
+	 */
+	long record(int section, long start) {
+		final long elapsed = System.nanoTime() - start;
+		add(section, elapsed);
+		return elapsed;
+	}
+	
+	void add(int section, long nanos) {
+		nanos = Math.max(0, nanos);
+		++histograms[section][bucket(nanos)];
+		++samples[section];
+		if (nanos > max[section]) {
+			max[section] = nanos;
+		}
+	}
+	
+	long samples(int section) {
+		return samples[section];
+	}
+	
+	long max(int section) {
+		return max[section];
+	}
+	
+	/**
+	 * The latency in nanoseconds that the given fraction of the samples of a section did not exceed,
+	 * rounded up to the end of its bucket, or 0 if there are no samples.
+	 */
+	long percentile(int section, double fraction) {
+		final long count = samples[section];
+		if (count == 0) {
+			return 0;
+		}
+		
+		final long rank = Math.max(1, (long) Math.ceil(fraction * count));
+		final long[] histogram = histograms[section];
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += histogram[bucket];
+			if (seen >= rank) {
+				return Math.min(max[section], upperBound(bucket));
+			}
+		}
+		return max[section];
+	}
+	
+	void reset() {
+		Arrays.fill(counters, 0);
+		Arrays.fill(samples, 0);
+		Arrays.fill(max, 0);
+		for (long[] histogram : histograms) {
+			Arrays.fill(histogram, 0);
+		}
+	}
+	
+	static String formatNanos(long nanos) {
+		if (nanos < 1_000) {
+			return nanos + "ns";
+		}
+		if (nanos < 1_000_000) {
+			return String.format(Locale.ROOT, "%.1fus", nanos / 1_000d);
+		}
+		return String.format(Locale.ROOT, "%.2fms", nanos / 1_000_000d);
+	}
+	
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+	
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int shift = bucket / SUB_BUCKETS - 1;
+		final long sub = SUB_BUCKETS + bucket % SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+}
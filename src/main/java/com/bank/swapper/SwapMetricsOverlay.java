@@ -0,0 +1,42 @@
+package com.bank.swapper;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+
+import javax.inject.Inject;
+
+import net.runelite.client.ui.overlay.OverlayPanel;
+import net.runelite.client.ui.overlay.OverlayPosition;
+import net.runelite.client.ui.overlay.components.LineComponent;
+import net.runelite.client.ui.overlay.components.TitleComponent;
+
+/**
+ * Debug overlay with the p50/p99 timings and counters from {@link SwapMetrics}.
+ */
+class SwapMetricsOverlay extends OverlayPanel {
+	private final SwapMetrics metrics;
+	
+	@Inject
+	SwapMetricsOverlay(SwapMetrics metrics) {
+		this.metrics = metrics;
+		setPosition(OverlayPosition.TOP_LEFT);
+	}
+	
+	@Override
+	public Dimension render(Graphics2D graphics) {
+		panelComponent.getChildren().add(TitleComponent.builder().text("Bank swapper").build());
+		for (int section = 0; section < SwapMetrics.SECTION_NAMES.length; section++) {
+			panelComponent.getChildren().add(LineComponent.builder()
+					.left(SwapMetrics.SECTION_NAMES[section])
+					.right(SwapMetrics.formatNanos(metrics.percentile(section, 0.5)) + " / " + SwapMetrics.formatNanos(metrics.percentile(section, 0.99)))
+					.build());
+		}
+		for (int counter = 0; counter < SwapMetrics.COUNTER_NAMES.length; counter++) {
+			panelComponent.getChildren().add(LineComponent.builder()
+					.left(SwapMetrics.COUNTER_NAMES[counter])
+					.right(Long.toString(metrics.get(counter)))
+					.build());
+		}
+		return super.render(graphics);
+	}
+}
@@ -0,0 +1,67 @@
+package com.bank.swapper;
+
+import java.util.function.Consumer;
+
+import net.runelite.api.MenuEntry;
+
+/**
+ * One of the options added to the menu to configure an item's swaps: a new left or shift click
+ * option, or resetting both. The labels and click handler are made once, so a cached option is added
+ * to the menu as it is.
+ */
+final class SwapOption {
+	static final int LEFT = 0;
+	static final int SHIFT = 1;
+	static final int RESET = 2;
+	
+	// Label prefixes of the options in the compact sub menu
+	static final String LEFT_CLICK_PREFIX = "Left click ";
+	static final String SHIFT_CLICK_PREFIX = "Shift click ";
+	private static final String RESET_LABEL = "Reset swap";
+	
+	final int type;
+	// MenuEntryClassifier namespace of the rule
+	final int namespace;
+	// The option being made the default, or null for RESET
+	final String option;
+	final String target;
+	final int itemId;
+	// Op of the entry being made the default, or -1 for RESET
+	final int op;
+	// Text of the menu entry, and of the sub menu entry in the compact menu
+	final String label;
+	final String subMenuLabel;
+	// Handler of the menu entry, or null if the option is not added as a menu entry
+	final Consumer<MenuEntry> onClick;
+	
+	SwapOption(int type, int namespace, String option, String target, int itemId, int op) {
+		this(type, namespace, option, target, itemId, op, null);
+	}
+	
+	/**
+	 * @param action run with this option when its menu entry is clicked
+	 */
+	SwapOption(int type, int namespace, String option, String target, int itemId, int op, Consumer<SwapOption> action) {
+		this.type = type;
+		this.namespace = namespace;
+		this.option = option;
+		this.target = target;
+		this.itemId = itemId;
+		this.op = op;
+		switch (type) {
+			case LEFT:
+				label = "Swap left click " + option;
+				subMenuLabel = LEFT_CLICK_PREFIX + option;
+				break;
+			case SHIFT:
+				label = "Swap shift click " + option;
+				subMenuLabel = SHIFT_CLICK_PREFIX + option;
+				break;
+			default:
+				label = RESET_LABEL;
+				subMenuLabel = RESET_LABEL;
+				break;
+		}
+		this.onClick = action == null ? null : entry -> action.accept(this);
+	}
+}
@@ -0,0 +1,110 @@
+package com.bank.swapper;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Packs every swap rule table into one Base64 string so they can be stored under a single config key.
+ * <p>
+ * The format is a version byte and a table count, then for each table its size followed by
+ * (item id delta, rule) pairs in ascending item id order. Every number is an unsigned varint,
+ * so a typical rule takes two to three bytes. Version 1 stored menu indexes, which are read back
+ * as {@link SwapRuleStore#indexRule index rules}.
+ */
+final class SwapRuleCodec {
+	private static final int FORMAT_VERSION = 2;
+	private static final int INDEX_FORMAT_VERSION = 1;
+	
+	private SwapRuleCodec() {
+	}
+	
+	static String encode(IntIntMap[] tables) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(FORMAT_VERSION);
+		writeVarint(out, tables.length);
+		for (IntIntMap table : tables) {
+			// Sort by item id so the ids can be written as small deltas
+			long[] rules = new long[table.size()];
+			int[] count = {0};
+			table.forEach((itemId, rule) -> rules[count[0]++] = (long) itemId << 32 | rule);
+			Arrays.sort(rules);
+			
+			writeVarint(out, rules.length);
+			int lastItemId = 0;
+			for (long rule : rules) {
+				int itemId = (int) (rule >>> 32);
+				writeVarint(out, itemId - lastItemId);
+				writeVarint(out, (int) rule);
+				lastItemId = itemId;
+			}
+		}
+		return Base64.getEncoder().encodeToString(out.toByteArray());
+	}
+	
+	/**
+	 * Decodes rules into the given tables, which must be empty.
+	 *
+	 * @throws IllegalArgumentException if the data is not a valid rule blob
+	 */
+	static void decode(String encoded, IntIntMap[] tables) {
+		Reader in = new Reader(Base64.getDecoder().decode(encoded));
+		int version = in.readByte();
+		if (version != FORMAT_VERSION && version != INDEX_FORMAT_VERSION) {
+			throw new IllegalArgumentException("Unknown swap rule format " + version);
+		}
+		
+		int tableCount = in.readVarint();
+		for (int table = 0; table < tableCount; table++) {
+			int size = in.readVarint();
+			int itemId = 0;
+			for (int i = 0; i < size; i++) {
+				itemId += in.readVarint();
+				int rule = in.readVarint();
+				if (version == INDEX_FORMAT_VERSION) {
+					rule = SwapRuleStore.indexRule(rule);
+				}
+				// Tables added by a newer version are skipped
+				if (table < tables.length) {
+					tables[table].put(itemId, rule);
+				}
+			}
+		}
+	}
+	
+	private static void writeVarint(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+	
+	private static final class Reader {
+		private final byte[] data;
+		private int position;
+		
+		Reader(byte[] data) {
+			this.data = data;
+		}
+		
+		int readByte() {
+			if (position >= data.length) {
+				throw new IllegalArgumentException("Truncated swap rules");
+			}
+			return data[position++] & 0xFF;
+		}
+		
+		int readVarint() {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int b = readByte();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IllegalArgumentException("Malformed varint in swap rules");
+		}
+	}
+}
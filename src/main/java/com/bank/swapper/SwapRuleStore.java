@@ -0,0 +1,531 @@
+package com.bank.swapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.config.ConfigManager;
+
+/**
+ * In-memory copy of the swap rules stored in the {@link BankMenuEntrySwapperConfig#GROUP} config group.
+ * Rules are loaded once and then read from primitive tables, so lookups on the client tick never
+ * build keys, parse values or box. A rule is the op (identifier) of the entry to swap to; rules
+ * saved as menu indexes by older versions are flagged with {@link #indexRule} until resolved.
+ * <p>
+ * The rules are published as immutable {@link SwapRules} snapshots. Readers take the current snapshot
+ * without locking; writers, which may be on the client thread, the EDT or the executor, are
+ * serialized and publish a new snapshot for every change.
+ * <p>
+ * All rules are persisted together under {@link #RULES_KEY} (see {@link SwapRuleCodec}). Rules saved
+ * by older versions as one key per item are migrated on load. Changes apply to the rules at once and
+ * are written in the background, so a burst of edits costs one write and never blocks the caller.
+ * <p>
+ * Named profiles each hold a full set of rules under their own key. Every profile is loaded up front,
+ * so switching profile only publishes that profile's snapshot.
+ * <p>
+ * While logged in the rules are kept in the RuneScape profile's configuration, so every account has
+ * its own. An account without rules starts from a copy of the rules shared by every account.
+ * <p>
+ * {@link GroupRules} from the config apply to every profile, below the rules of each item.
+ */
+@Slf4j
+@Singleton
+class SwapRuleStore {
+	static final int NONE = -1;
+	static final String RULES_KEY = "swapRules";
+	static final String DEFAULT_PROFILE = "";
+	
+	private static final String PROFILE_KEY_PREFIX = RULES_KEY + "_";
+	
+	// Set on rules saved by older versions, which hold a menu index rather than the op of the entry
+	private static final int INDEX_RULE = 1 << 30;
+	
+	// How long changes are collected before they are written
+	private static final long FLUSH_DELAY_MS = 1000;
+	
+	// Keys of the rules saved by older versions, indexed by table; these only had the bank tables
+	private static final String[] KEY_PREFIXES = {
+			BankMenuEntrySwapperPlugin.BANK_KEY_PREFIX,
+			BankMenuEntrySwapperPlugin.BANK_SHIFT_KEY_PREFIX,
+			BankMenuEntrySwapperPlugin.BANK_INVENTORY_KEY_PREFIX,
+			BankMenuEntrySwapperPlugin.BANK_INVENTORY_SHIFT_KEY_PREFIX
+	};
+	
+	private final AtomicReference<SwapRules> rules = new AtomicReference<>(SwapRules.EMPTY);
+	// Rules of the profiles other than the active one, by name
+	private final Map<String, SwapRules> profiles = new HashMap<>();
+	private String profile = DEFAULT_PROFILE;
+	private final ItemVariationCache itemVariations = new ItemVariationCache();
+	
+	private final ConfigManager configManager;
+	private final ScheduledExecutorService executor;
+	
+	// RuneScape profile the rules are stored under, or null for the rules shared by every account
+	private String rsProfile;
+	private boolean loaded;
+	// The encoded rules as last loaded or saved
+	private volatile String stored;
+	private boolean dirty;
+	private Future<?> pendingFlush;
+	
+	@Inject
+	SwapRuleStore(ConfigManager configManager, ScheduledExecutorService executor) {
+		this.configManager = configManager;
+		this.executor = executor;
+	}
+	
+	/**
+	 * Loads every profile stored under a RuneScape profile, or the shared rules if it is null, with the
+	 * default profile active.
+	 */
+	synchronized void load(String rsProfile) {
+		// Anything not yet written is superseded by what is stored
+		dirty = false;
+		
+		this.rsProfile = rsProfile;
+		loadProfiles();
+		if (rsProfile != null && stored == null && profiles.isEmpty()) {
+			// Nothing is stored for this account yet, so start from the shared rules
+			this.rsProfile = null;
+			loadProfiles();
+			this.rsProfile = rsProfile;
+			copyProfiles();
+		}
+		loaded = true;
+	}
+	
+	/**
+	 * Whether the rules of the RuneScape profile (or the shared rules, for null) are loaded.
+	 */
+	synchronized boolean isLoaded(String rsProfile) {
+		return loaded && Objects.equals(this.rsProfile, rsProfile);
+	}
+	
+	/**
+	 * Writes any pending changes in the background and drops the loaded rules.
+	 */
+	void release() {
+		flushInBackground();
+		synchronized (this) {
+			clear();
+			rsProfile = null;
+			stored = null;
+			loaded = false;
+		}
+	}
+	
+	private void loadProfiles() {
+		profile = DEFAULT_PROFILE;
+		profiles.clear();
+		for (String key : getStoredKeys(PROFILE_KEY_PREFIX)) {
+			String name = profileOf(key);
+			if (name != null) {
+				profiles.put(name, SwapRules.EMPTY.reset(decode(getStoredValue(key))));
+			}
+		}
+		
+		stored = getStoredValue(RULES_KEY);
+		if (stored != null || rsProfile != null) {
+			rules.set(rules.get().reset(decode(stored)));
+			return;
+		}
+		
+		migrateLegacyRules(SwapRules.emptyTables());
+	}
+	
+	// Writes every profile under the RuneScape profile in the background
+	private void copyProfiles() {
+		final String target = rsProfile;
+		final Map<String, SwapRules> copy = new HashMap<>(profiles);
+		copy.put(profile, rules.get());
+		executor.execute(() -> copy.forEach((name, snapshot) -> write(target, rulesKey(name), SwapRuleCodec.encode(snapshot.tables()))));
+		stored = null;
+	}
+	
+	private String getStoredValue(String key) {
+		return rsProfile == null
+				? configManager.getConfiguration(BankMenuEntrySwapperConfig.GROUP, key)
+				: configManager.getConfiguration(BankMenuEntrySwapperConfig.GROUP, rsProfile, key);
+	}
+	
+	// Keys without the group or profile, starting with the prefix
+	private List<String> getStoredKeys(String keyPrefix) {
+		if (rsProfile != null) {
+			return configManager.getRSProfileConfigurationKeys(BankMenuEntrySwapperConfig.GROUP, rsProfile, keyPrefix);
+		}
+		
+		final String groupPrefix = BankMenuEntrySwapperConfig.GROUP + ".";
+		List<String> keys = new ArrayList<>();
+		for (String fullKey : configManager.getConfigurationKeys(groupPrefix + keyPrefix)) {
+			keys.add(fullKey.substring(groupPrefix.length()));
+		}
+		return keys;
+	}
+	
+	private void write(String rsProfile, String key, String value) {
+		if (rsProfile == null) {
+			configManager.setConfiguration(BankMenuEntrySwapperConfig.GROUP, key, value);
+		} else {
+			configManager.setConfiguration(BankMenuEntrySwapperConfig.GROUP, rsProfile, key, value);
+		}
+	}
+	
+	/**
+	 * Makes a profile the active one, creating it if it does not exist yet. Changes to the previous
+	 * profile that have not been written yet are written in the background.
+	 */
+	synchronized void switchProfile(String name) {
+		if (name.equals(profile)) {
+			return;
+		}
+		
+		SwapRules previous = rules.get();
+		if (dirty) {
+			if (pendingFlush != null) {
+				pendingFlush.cancel(false);
+				pendingFlush = null;
+			}
+			dirty = false;
+			
+			// The snapshot cannot change, so it can be encoded later
+			final String previousRsProfile = rsProfile;
+			final String previousKey = rulesKey(profile);
+			executor.execute(() -> write(previousRsProfile, previousKey, SwapRuleCodec.encode(previous.tables())));
+		}
+		
+		profiles.put(profile, previous);
+		SwapRules next = profiles.remove(name);
+		// Every item may have changed, so the snapshot takes a new version
+		rules.set(previous.reset(next != null ? next.tables() : SwapRules.emptyTables()));
+		profile = name;
+		stored = null;
+		log.debug("Switched to swap profile '{}'", name);
+	}
+	
+	synchronized String getProfile() {
+		return profile;
+	}
+	
+	/**
+	 * Config key holding the rules of a profile.
+	 */
+	static String rulesKey(String profile) {
+		return DEFAULT_PROFILE.equals(profile) ? RULES_KEY : PROFILE_KEY_PREFIX + profile;
+	}
+	
+	// Profile whose rules are held by a key, or null if it is not a rules key
+	private static String profileOf(String key) {
+		if (RULES_KEY.equals(key)) {
+			return DEFAULT_PROFILE;
+		}
+		if (key.startsWith(PROFILE_KEY_PREFIX) && key.length() > PROFILE_KEY_PREFIX.length()) {
+			return key.substring(PROFILE_KEY_PREFIX.length());
+		}
+		return null;
+	}
+	
+	// Decodes stored rules, treating missing or invalid ones as empty
+	private static IntIntMap[] decode(String encoded) {
+		IntIntMap[] tables = SwapRules.emptyTables();
+		if (encoded == null) {
+			return tables;
+		}
+		
+		try {
+			SwapRuleCodec.decode(encoded, tables);
+		} catch (IllegalArgumentException e) {
+			log.warn("Unable to load swap rules", e);
+			return SwapRules.emptyTables();
+		}
+		return tables;
+	}
+	
+	/**
+	 * Whether the encoded rules are the ones this store last loaded or saved, so that the
+	 * config change caused by saving does not trigger a reload.
+	 */
+	boolean isStored(String encoded) {
+		return encoded != null && encoded.equals(stored);
+	}
+	
+	/**
+	 * Whether a key of the config group holds swap rules, either all of them or a legacy single rule.
+	 */
+	static boolean isRuleKey(String key) {
+		return profileOf(key) != null || legacyTable(key) != -1;
+	}
+	
+	/**
+	 * Applies a change to a rule key made outside this store, e.g. by config sync or a profile
+	 * change. Only the rules that differ are updated, and only those items get a new version, so
+	 * anything cached for other items stays valid.
+	 */
+	void applyConfigChange(String rsProfile, String key, String newValue) {
+		int table = legacyTable(key);
+		if (table != -1) {
+			// Legacy keys are only read, so their removal changes nothing
+			if (newValue == null || rsProfile != null) {
+				return;
+			}
+			
+			synchronized (this) {
+				// While nothing is loaded the tables are empty, and saving them would wipe the shared rules
+				if (!loaded || this.rsProfile != null) {
+					return;
+				}
+				
+				IntIntMap legacy = new IntIntMap();
+				int itemId = loadRule(legacy, table, key, newValue);
+				if (itemId != NONE) {
+					// Legacy rules belong to the default profile
+					if (DEFAULT_PROFILE.equals(profile)) {
+						rules.set(rules.get().with(table, itemId, legacy.get(itemId, NONE)));
+						scheduleFlush();
+					} else {
+						SwapRules defaultRules = profiles.getOrDefault(DEFAULT_PROFILE, SwapRules.EMPTY).with(table, itemId, legacy.get(itemId, NONE));
+						profiles.put(DEFAULT_PROFILE, defaultRules);
+						executor.execute(() -> configManager.setConfiguration(BankMenuEntrySwapperConfig.GROUP, RULES_KEY, SwapRuleCodec.encode(defaultRules.tables())));
+					}
+				}
+			}
+			configManager.unsetConfiguration(BankMenuEntrySwapperConfig.GROUP, key);
+			return;
+		}
+		
+		synchronized (this) {
+			String name = profileOf(key);
+			if (name == null || !loaded || !Objects.equals(rsProfile, this.rsProfile) || isStored(newValue)) {
+				return;
+			}
+			if (!name.equals(profile)) {
+				if (newValue == null) {
+					profiles.remove(name);
+				} else {
+					profiles.put(name, SwapRules.EMPTY.reset(decode(newValue)));
+				}
+				return;
+			}
+			
+			IntIntMap[] incoming = SwapRules.emptyTables();
+			if (newValue != null) {
+				try {
+					SwapRuleCodec.decode(newValue, incoming);
+				} catch (IllegalArgumentException e) {
+					log.warn("Ignoring invalid swap rules", e);
+					return;
+				}
+			}
+			
+			rules.set(rules.get().replace(incoming));
+			// Like a reload, this supersedes anything not yet written
+			stored = newValue;
+			dirty = false;
+		}
+	}
+	
+	private void migrateLegacyRules(IntIntMap[] tables) {
+		// Every rule prefix starts with BANK_KEY_PREFIX
+		List<String> legacyKeys = new ArrayList<>();
+		for (String key : getStoredKeys(BankMenuEntrySwapperPlugin.BANK_KEY_PREFIX)) {
+			String value = configManager.getConfiguration(BankMenuEntrySwapperConfig.GROUP, key);
+			int table = legacyTable(key);
+			if (value != null && table != -1) {
+				loadRule(tables[table], table, key, value);
+				legacyKeys.add(key);
+			}
+		}
+		rules.set(rules.get().reset(tables));
+		
+		if (legacyKeys.isEmpty()) {
+			return;
+		}
+		
+		// Write the combined rules before removing anything, so an interrupted migration loses nothing
+		save();
+		for (String key : legacyKeys) {
+			configManager.unsetConfiguration(BankMenuEntrySwapperConfig.GROUP, key);
+		}
+		log.info("Migrated {} swap rules to a single config entry", legacyKeys.size());
+	}
+	
+	private void save() {
+		stored = SwapRuleCodec.encode(rules.get().tables());
+		write(rsProfile, rulesKey(profile), stored);
+	}
+	
+	/**
+	 * Writes any changes that have not been saved yet.
+	 */
+	void flush() {
+		Runnable write = takePendingWrite();
+		if (write != null) {
+			write.run();
+		}
+	}
+	
+	/**
+	 * Writes any changes that have not been saved yet on the executor, so the client thread never
+	 * encodes or saves the rules.
+	 */
+	void flushInBackground() {
+		Runnable write = takePendingWrite();
+		if (write != null) {
+			executor.execute(write);
+		}
+	}
+	
+	// The write of the changes not saved yet, or null if there are none. The snapshot cannot change,
+	// so it can be encoded later.
+	private synchronized Runnable takePendingWrite() {
+		if (pendingFlush != null) {
+			pendingFlush.cancel(false);
+			pendingFlush = null;
+		}
+		if (!dirty) {
+			return null;
+		}
+		dirty = false;
+		
+		final String scope = rsProfile;
+		final String key = rulesKey(profile);
+		final SwapRules snapshot = rules.get();
+		return () -> {
+			final String encoded = SwapRuleCodec.encode(snapshot.tables());
+			synchronized (this) {
+				// Rules loaded since then have their own stored value
+				if (loaded && Objects.equals(scope, rsProfile) && key.equals(rulesKey(profile))) {
+					stored = encoded;
+				}
+			}
+			write(scope, key, encoded);
+		};
+	}
+	
+	private void scheduleFlush() {
+		dirty = true;
+		if (pendingFlush == null) {
+			pendingFlush = executor.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	synchronized void clear() {
+		rules.set(rules.get().reset(SwapRules.emptyTables()));
+		profiles.clear();
+	}
+	
+	/**
+	 * The current rules. Reading several rules from one snapshot gives a consistent view of them.
+	 */
+	SwapRules snapshot() {
+		return rules.get();
+	}
+	
+	int getVersion() {
+		return rules.get().getVersion();
+	}
+	
+	/**
+	 * The version at which the rules of an item last changed.
+	 */
+	int getVersion(int itemId) {
+		return rules.get().getVersion(itemVariations.map(itemId));
+	}
+	
+	int canonicalItemId(int itemId) {
+		return itemVariations.map(itemId);
+	}
+	
+	/**
+	 * @param namespace the {@link MenuEntryClassifier} namespace of the rule
+	 */
+	int get(int namespace, boolean shift, int itemId) {
+		return get(rules.get(), namespace, shift, itemId);
+	}
+	
+	int get(SwapRules snapshot, int namespace, boolean shift, int itemId) {
+		return snapshot.get(SwapRules.table(namespace, shift), itemVariations.map(itemId), itemId);
+	}
+	
+	/**
+	 * Replaces the group rules of every profile. They are not persisted by the store.
+	 */
+	synchronized void setGroupRules(GroupRules groups) {
+		rules.set(rules.get().withGroups(groups));
+	}
+	
+	/**
+	 * Sets a rule, unless no rules are loaded.
+	 */
+	synchronized void set(int namespace, boolean shift, int itemId, int index) {
+		if (!loaded) {
+			return;
+		}
+		rules.set(rules.get().with(SwapRules.table(namespace, shift), itemVariations.map(itemId), index));
+		scheduleFlush();
+	}
+	
+	synchronized void unset(int namespace, boolean shift, int itemId) {
+		if (!loaded) {
+			return;
+		}
+		rules.set(rules.get().without(SwapRules.table(namespace, shift), itemVariations.map(itemId)));
+		scheduleFlush();
+	}
+	
+	// Returns the item id of the rule, or NONE if the key or value is invalid
+	private int loadRule(IntIntMap table, int tableIndex, String key, String value) {
+		try {
+			int itemId = Integer.parseInt(key.substring(KEY_PREFIXES[tableIndex].length()));
+			table.put(itemId, indexRule(Integer.parseInt(value)));
+			return itemId;
+		} catch (NumberFormatException e) {
+			log.warn("Ignoring invalid swap rule {}={}", key, value);
+			return NONE;
+		}
+	}
+	// Table of a legacy per-item rule key, or -1 if it is not one
+	private static int legacyTable(String key) {
+		for (int table = 0; table < KEY_PREFIXES.length; table++) {
+			String prefix = KEY_PREFIXES[table];
+			// bank_ is also a prefix of the other tables, so require the rest of the key to be the item id
+			if (key.startsWith(prefix) && isDigits(key, prefix.length())) {
+				return table;
+			}
+		}
+		return -1;
+	}
+	
+	static int indexRule(int index) {
+		return index | INDEX_RULE;
+	}
+	
+	static boolean isIndexRule(int rule) {
+		return rule != NONE && (rule & INDEX_RULE) != 0;
+	}
+	
+	static int ruleIndex(int rule) {
+		return rule & ~INDEX_RULE;
+	}
+	
+	private static boolean isDigits(String str, int start) {
+		if (start >= str.length()) {
+			return false;
+		}
+		for (int i = start; i < str.length(); i++) {
+			if (!Character.isDigit(str.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,153 @@
+package com.bank.swapper;
+
+/**
+ * An immutable snapshot of every swap rule. Changes create a new snapshot that copies only the
+ * table being changed, so a reader holding a snapshot always sees one consistent set of rules.
+ * Item ids are canonical; see {@link SwapRuleStore} for the lookups by raw item id.
+ * <p>
+ * An item without a rule of its own falls back to the {@link GroupRules} of the snapshot.
+ */
+final class SwapRules {
+	// A left and a shift click table per namespace, see table()
+	static final int TABLES = (MenuEntryClassifier.NAMESPACE_LIMIT - 1) * 2;
+	
+	static final SwapRules EMPTY = new SwapRules(emptyTables(), GroupRules.EMPTY, new IntIntMap(), 0, 0);
+	
+	// Never modified once the snapshot is created
+	private final IntIntMap[] tables;
+	private final GroupRules groups;
+	// Version of the last change by item id, for items changed since clearVersion
+	private final IntIntMap itemVersions;
+	private final int version;
+	private final int clearVersion;
+	
+	private SwapRules(IntIntMap[] tables, GroupRules groups, IntIntMap itemVersions, int version, int clearVersion) {
+		this.tables = tables;
+		this.groups = groups;
+		this.itemVersions = itemVersions;
+		this.version = version;
+		this.clearVersion = clearVersion;
+	}
+	
+	/**
+	 * @param itemId the canonical item id stored rules are keyed by
+	 * @param rawItemId the item's own id, which group rules are matched against
+	 */
+	int get(int table, int itemId, int rawItemId) {
+		final int rule = tables[table].get(itemId, SwapRuleStore.NONE);
+		return rule != SwapRuleStore.NONE ? rule : groups.get(table, rawItemId);
+	}
+
+	
+	/**
+	 * Bumped by every change, so decisions made with older rules can be recognised as stale.
+	 */
+	int getVersion() {
+		return version;
+	}
+	
+	/**
+	 * The version at which the rules of an item last changed.
+	 */
+	int getVersion(int itemId) {
+		return Math.max(clearVersion, itemVersions.get(itemId, 0));
+	}
+	
+	/**
+	 * The tables for encoding. They must not be modified.
+	 */
+	IntIntMap[] tables() {
+		return tables;
+	}
+	
+	SwapRules with(int table, int itemId, int rule) {
+		if (tables[table].get(itemId, SwapRuleStore.NONE) == rule) {
+			return this;
+		}
+		
+		IntIntMap[] changed = tables.clone();
+		changed[table] = tables[table].copy();
+		changed[table].put(itemId, rule);
+		return changed(changed, itemId);
+	}
+	
+	SwapRules without(int table, int itemId) {
+		if (!tables[table].containsKey(itemId)) {
+			return this;
+		}
+		
+		IntIntMap[] changed = tables.clone();
+		changed[table] = tables[table].copy();
+		changed[table].remove(itemId);
+		return changed(changed, itemId);
+	}
+	
+	/**
+	 * A snapshot holding the given tables in place of these, with a new version for every item
+	 * whose rules differ. The tables are taken over by the snapshot.
+	 */
+	SwapRules replace(IntIntMap[] incoming) {
+		final int changeVersion = version + 1;
+		IntIntMap versions = itemVersions.copy();
+		boolean[] changed = {false};
+		for (int i = 0; i < TABLES; i++) {
+			IntIntMap current = tables[i];
+			IntIntMap replacement = incoming[i];
+			current.forEach((itemId, rule) -> {
+				if (replacement.get(itemId, SwapRuleStore.NONE) != rule) {
+					versions.put(itemId, changeVersion);
+					changed[0] = true;
+				}
+			});
+			replacement.forEach((itemId, rule) -> {
+				if (!current.containsKey(itemId)) {
+					versions.put(itemId, changeVersion);
+					changed[0] = true;
+				}
+			});
+		}
+		
+		if (!changed[0]) {
+			return this;
+		}
+		return new SwapRules(incoming, groups, versions, changeVersion, clearVersion);
+	}
+	
+	/**
+	 * A snapshot holding the given tables, which changes the version of every item.
+	 */
+	SwapRules reset(IntIntMap[] incoming) {
+		return new SwapRules(incoming, groups, new IntIntMap(), version + 1, version + 1);
+	}
+	
+	/**
+	 * A snapshot with these tables and the given group rules, which changes the version of every item.
+	 */
+	SwapRules withGroups(GroupRules groups) {
+		if (this.groups == groups) {
+			return this;
+		}
+		return new SwapRules(tables, groups, new IntIntMap(), version + 1, version + 1);
+	}
+	
+	/**
+	 * The table of the rules of a {@link MenuEntryClassifier} namespace.
+	 */
+	static int table(int namespace, boolean shift) {
+		return (namespace - 1) * 2 + (shift ? 1 : 0);
+	}
+	
+	static IntIntMap[] emptyTables() {
+		IntIntMap[] tables = new IntIntMap[TABLES];
+		for (int i = 0; i < tables.length; i++) {
+			tables[i] = new IntIntMap();
+		}
+		return tables;
+	}
+	
+	private SwapRules changed(IntIntMap[] changed, int itemId) {
+		IntIntMap versions = itemVersions.copy();
+		versions.put(itemId, version + 1);
+		return new SwapRules(changed, groups, versions, version + 1, clearVersion);
+	}
+}
@@ -28,31 +28,51 @@ import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.testing.fieldbinder.Bind;
 import com.google.inject.testing.fieldbinder.BoundFieldModule;
+import java.awt.event.KeyEvent;
 import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
 import net.runelite.api.Client;
 import net.runelite.api.GameState;
 import net.runelite.api.MenuAction;
 import net.runelite.api.MenuEntry;
 import net.runelite.api.events.ClientTick;
+import net.runelite.api.events.CommandExecuted;
+import net.runelite.api.events.GameStateChanged;
+import net.runelite.api.events.MenuEntryAdded;
 import net.runelite.api.events.MenuOpened;
+import net.runelite.api.events.PostMenuSort;
+import net.runelite.api.events.WidgetClosed;
+import net.runelite.api.events.WidgetLoaded;
 import net.runelite.api.widgets.Widget;
+import net.runelite.api.widgets.WidgetID;
 import net.runelite.api.widgets.WidgetInfo;
+import net.runelite.client.callback.ClientThread;
 import net.runelite.client.chat.ChatMessageManager;
+import net.runelite.client.chat.QueuedMessage;
 import net.runelite.client.config.ConfigManager;
+import net.runelite.client.events.ConfigChanged;
 import net.runelite.client.game.ItemManager;
+import net.runelite.client.input.KeyManager;
+import net.runelite.client.ui.overlay.OverlayManager;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
-import static org.mockito.ArgumentMatchers.anyString;
 
 import org.mockito.Mock;
 
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -68,6 +88,10 @@ public class BankMenuEntrySwapperPluginTest {
 	@Bind
 	Client client;
 	
+	@Mock
+	@Bind
+	ClientThread clientThread;
+	
 	@Mock
 	@Bind
 	ConfigManager configManager;
@@ -76,10 +100,22 @@ public class BankMenuEntrySwapperPluginTest {
 	@Bind
 	ItemManager itemManager;
 	
+	@Mock
+	@Bind
+	KeyManager keyManager;
+	
+	@Mock
+	@Bind
+	ScheduledExecutorService executor;
+	
 	@Mock
 	@Bind
 	ChatMessageManager chatMessageManager;
 	
+	@Mock
+	@Bind
+	OverlayManager overlayManager;
+	
 	@Mock
 	@Bind
 	Widget widget;
@@ -95,6 +131,12 @@ public class BankMenuEntrySwapperPluginTest {
 	@Inject
 	BankMenuEntrySwapperPlugin bankMenuEntrySwapperPlugin;
 	
+	@Inject
+	SwapRuleStore swapRuleStore;
+	
+	@Inject
+	SwapMetrics swapMetrics;
+	
 	private MenuEntry[] entries;
 	private int param1;
 	private boolean shiftStatus = true;
@@ -102,12 +144,17 @@ public class BankMenuEntrySwapperPluginTest {
 	@Before
 	public void before() {
 		Guice.createInjector(BoundFieldModule.of(this)).injectMembers(this);
+		// Rules are loaded on login, which the tests skip
+		swapRuleStore.load(null);
 		
-		when(client.getGameState()).thenReturn(GameState.LOGGED_IN);
-		when(client.getWidget(WidgetInfo.BANK_CONTAINER)).thenReturn(widget);
-		when(bankMenuEntrySwapperPlugin.shiftModifier()).thenAnswer((Answer<Boolean>) invocationOnMock -> {
-			return shiftStatus;
-		});
+		WidgetLoaded widgetLoaded = new WidgetLoaded();
+		widgetLoaded.setGroupId(WidgetID.BANK_GROUP_ID);
+		bankMenuEntrySwapperPlugin.onWidgetLoaded(widgetLoaded);
+		
+		lenient().when(client.getGameState()).thenReturn(GameState.LOGGED_IN);
+		lenient().when(client.getWidget(WidgetInfo.BANK_CONTAINER)).thenReturn(widget);
+		lenient().when(config.swapProfile()).thenReturn("");
+		setShift(shiftStatus);
 		
 		when(client.getMenuEntries()).thenAnswer((Answer<MenuEntry[]>) invocationOnMock -> {
 			// The menu implementation returns a copy of the array, which causes swap() to not
@@ -115,13 +162,7 @@ public class BankMenuEntrySwapperPluginTest {
 			return Arrays.copyOf(entries, entries.length);
 		});
 		
-		doAnswer((Answer<Void>) invocationOnMock -> {
-			Object[] arguments = invocationOnMock.getArguments();
-			when(configManager.getConfiguration((String)arguments[0], (String)arguments[1])).thenReturn(String.valueOf(arguments[2]));
-			return null;
-		}).when(configManager).setConfiguration(anyString(), anyString(), anyInt());
-		
-		when(client.createMenuEntry(anyInt())).thenAnswer((Answer<MenuEntry>) invocationOnMock -> {
+		lenient().when(client.createMenuEntry(anyInt())).thenAnswer((Answer<MenuEntry>) invocationOnMock -> {
 			TestMenuEntry testMenuEntry = new TestMenuEntry();
 			int index = invocationOnMock.getArgument(0);
 			
@@ -145,8 +186,42 @@ public class BankMenuEntrySwapperPluginTest {
 		}).when(client).setMenuEntries(any(MenuEntry[].class));
 	}
 	
+	private void setShift(boolean pressed) {
+		shiftStatus = pressed;
+		
+		KeyEvent keyEvent = mock(KeyEvent.class);
+		when(keyEvent.getKeyCode()).thenReturn(KeyEvent.VK_SHIFT);
+		if (pressed) {
+			bankMenuEntrySwapperPlugin.keyPressed(keyEvent);
+		} else {
+			bankMenuEntrySwapperPlugin.keyReleased(keyEvent);
+		}
+	}
+	
 	private MenuEntry menu(String option, String target, MenuAction menuAction) {
-		return menu(option, target, menuAction, 0);
+		return menu(option, target, menuAction, op(option));
+	}
+	
+	// Ops of the bank withdraw options, with Withdraw-1 as the default quantity
+	private static int op(String option) {
+		switch (option) {
+			case "Withdraw-1":
+				return MenuEntryClassifier.DEFAULT_QUANTITY_OP;
+			case "Withdraw-5":
+				return 3;
+			case "Withdraw-10":
+				return 4;
+			case "Withdraw-16":
+				return 5;
+			case "Withdraw-X":
+				return 6;
+			case "Withdraw-All":
+				return 7;
+			case "Withdraw-All-but-1":
+				return 8;
+			default:
+				return 0;
+		}
 	}
 	
 	private MenuEntry menu(String option, String target, MenuAction menuAction, int identifier) {
@@ -184,8 +259,9 @@ public class BankMenuEntrySwapperPluginTest {
 	}
 	
 	@Test
-	public void testBankMenu() {
+	public void testBankMenu() throws Exception {
 		lenient().when(config.bankCustomization()).thenReturn(true);
+		bankMenuEntrySwapperPlugin.startUp();
 		
 		param1 = 786445;
 		ClientTick clientTick = new ClientTick();
@@ -195,7 +271,7 @@ public class BankMenuEntrySwapperPluginTest {
 		
 		baseEntries = new MenuEntry[] {
 				menu("Cancel", "", MenuAction.CANCEL),
-				menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
+				menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP),
 				menu("Withdraw-All-but-1", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 				menu("Withdraw-All", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 				menu("Withdraw-X", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
@@ -229,7 +305,7 @@ public class BankMenuEntrySwapperPluginTest {
 		/* 13 */menu("Swap left click Withdraw-10", AIR_RUNE, MenuAction.RUNELITE),
 		/* 14 */menu("Swap left click Withdraw-5", AIR_RUNE, MenuAction.RUNELITE),
 		/* 15 */menu("Swap left click Withdraw-1", AIR_RUNE, MenuAction.RUNELITE),
-		/* 16 */menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
+		/* 16 */menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP),
 		/* 17 */menu("Withdraw-All-but-1", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 		/* 18 */menu("Withdraw-All", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 		/* 19 */menu("Withdraw-X", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
@@ -250,7 +326,7 @@ public class BankMenuEntrySwapperPluginTest {
 		baseShiftEntries = argumentCaptor.getValue();
 		assertArrayEquals(new MenuEntry[] {
 				menu("Cancel", "", MenuAction.CANCEL),
-				menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
+				menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP),
 				menu("Withdraw-All-but-1", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 				menu("Withdraw-All", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 				menu("Withdraw-X", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
@@ -261,17 +337,17 @@ public class BankMenuEntrySwapperPluginTest {
 		}, baseShiftEntries);
 		
 		
-		shiftStatus = false;
+		setShift(false);
 		resetEntries(baseEntries, baseShiftEntries);
 		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
 		verify(client, times(1)).setMenuEntries(argumentCaptor.capture()); // verify it wasn't called.
 		
 		
-		shiftStatus = true;
+		setShift(true);
 		resetEntries(baseEntries, baseShiftEntries);
 		menuOpened.setMenuEntries(baseShiftEntries);
 		bankMenuEntrySwapperPlugin.onMenuOpened(menuOpened);
-		shiftStatus = false;
+		setShift(false);
 		
 		newEntries = client.getMenuEntries();
 		assertArrayEquals(new MenuEntry[] {
@@ -290,7 +366,7 @@ public class BankMenuEntrySwapperPluginTest {
 		/* 12 */menu("Swap left click Withdraw-10", AIR_RUNE, MenuAction.RUNELITE),
 		/* 13 */menu("Swap left click Withdraw-1", AIR_RUNE, MenuAction.RUNELITE),
 		/* 14 */menu("Swap left click Withdraw-5", AIR_RUNE, MenuAction.RUNELITE),
-		/* 15 */menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
+		/* 15 */menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP),
 		/* 16 */menu("Withdraw-All-but-1", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 		/* 17 */menu("Withdraw-All", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 		/* 18 */menu("Withdraw-X", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
@@ -310,7 +386,7 @@ public class BankMenuEntrySwapperPluginTest {
 		
 		assertArrayEquals(new MenuEntry[] {
 				menu("Cancel", "", MenuAction.CANCEL),
-				menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
+				menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP),
 				menu("Withdraw-All-but-1", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 				menu("Withdraw-All", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 				menu("Withdraw-X", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
@@ -321,7 +397,7 @@ public class BankMenuEntrySwapperPluginTest {
 		}, argumentCaptor.getValue());
 		
 		
-		shiftStatus = true;
+		setShift(true);
 		resetEntries(baseEntries, baseShiftEntries);
 		menuOpened.setMenuEntries(baseShiftEntries);
 		bankMenuEntrySwapperPlugin.onMenuOpened(menuOpened);
@@ -342,7 +418,7 @@ public class BankMenuEntrySwapperPluginTest {
 		/* 11 */menu("Swap left click Withdraw-16", AIR_RUNE, MenuAction.RUNELITE),
 		/* 12 */menu("Swap left click Withdraw-1", AIR_RUNE, MenuAction.RUNELITE),
 		/* 13 */menu("Swap left click Withdraw-5", AIR_RUNE, MenuAction.RUNELITE),
-		/* 14 */menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
+		/* 14 */menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP),
 		/* 15 */menu("Withdraw-All-but-1", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 		/* 16 */menu("Withdraw-All", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 		/* 17 */menu("Withdraw-X", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
@@ -363,7 +439,7 @@ public class BankMenuEntrySwapperPluginTest {
 		baseShiftEntries = argumentCaptor.getValue();
 		assertArrayEquals(new MenuEntry[] {
 				menu("Cancel", "", MenuAction.CANCEL),
-				menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
+				menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP),
 				menu("Withdraw-All-but-1", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 				menu("Withdraw-All", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 				menu("Withdraw-X", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
@@ -394,7 +470,7 @@ public class BankMenuEntrySwapperPluginTest {
 		/* 11 */menu("Swap left click Withdraw-16", AIR_RUNE, MenuAction.RUNELITE),
 		/* 12 */menu("Swap left click Withdraw-1", AIR_RUNE, MenuAction.RUNELITE),
 		/* 13 */menu("Swap left click Withdraw-5", AIR_RUNE, MenuAction.RUNELITE),
-		/* 14 */menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
+		/* 14 */menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP),
 		/* 15 */menu("Withdraw-All-but-1", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 		/* 16 */menu("Withdraw-All", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
 		/* 17 */menu("Withdraw-X", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY),
@@ -406,4 +482,471 @@ public class BankMenuEntrySwapperPluginTest {
 		
 		// TODO: Multiple different items? Test that bank and inventory dont impact eachother?
 	}
-}
\ No newline at end of file
+	
+	@Test
+	public void testCompactSwapMenu() throws Exception {
+		lenient().when(config.bankCustomization()).thenReturn(true);
+		when(config.compactSwapMenu()).thenReturn(true);
+		bankMenuEntrySwapperPlugin.startUp();
+		
+		param1 = 786445;
+		MenuOpened menuOpened = new MenuOpened();
+		MenuEntry[] baseEntries = new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP),
+		};
+		entries = baseEntries;
+		menuOpened.setMenuEntries(baseEntries);
+		bankMenuEntrySwapperPlugin.onMenuOpened(menuOpened);
+		
+		// A single entry is added to the menu, holding the options in its sub menu
+		MenuEntry[] newEntries = client.getMenuEntries();
+		assertArrayEquals(new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Swap options", AIR_RUNE, MenuAction.RUNELITE),
+				menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP),
+		}, newEntries);
+		
+		MenuEntry[] subMenu = newEntries[1].getSubMenu().getMenuEntries();
+		String[] options = new String[subMenu.length];
+		for (int i = 0; i < subMenu.length; i++) {
+			options[i] = subMenu[i].getOption();
+		}
+		assertArrayEquals(new String[] {
+				"Reset swap",
+				"Shift click Withdraw-5",
+				"Left click Withdraw-5",
+				"Shift click Withdraw-1",
+				"Left click Withdraw-1",
+		}, options);
+		
+		// Every option shares the same click handler
+		Consumer<MenuEntry> onClick = ((TestMenuEntry) subMenu[0]).getClickConsumer();
+		for (MenuEntry entry : subMenu) {
+			assertSame(onClick, ((TestMenuEntry) entry).getClickConsumer());
+		}
+		
+		onClick.accept(subMenu[1]);
+		assertEquals(op("Withdraw-5"), swapRuleStore.get(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE)));
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(MenuEntryClassifier.BANK, false, getItemId(AIR_RUNE)));
+		
+		onClick.accept(subMenu[0]);
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE)));
+		verify(chatMessageManager, times(2)).queue(any());
+	}
+	
+	@Test
+	public void testUnchangedMenu() throws Exception {
+		lenient().when(config.bankCustomization()).thenReturn(true);
+		bankMenuEntrySwapperPlugin.startUp();
+		
+		param1 = 786445;
+		ClientTick clientTick = new ClientTick();
+		MenuEntry[] baseEntries = new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP),
+		};
+		swapRuleStore.set(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE), op("Withdraw-5"));
+		
+		// The second tick sees the same menu and must repeat the swap without re-evaluating it
+		entries = baseEntries;
+		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		entries = baseEntries;
+		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		
+		ArgumentCaptor<MenuEntry[]> argumentCaptor = ArgumentCaptor.forClass(MenuEntry[].class);
+		verify(client, times(2)).setMenuEntries(argumentCaptor.capture());
+		for (MenuEntry[] swapped : argumentCaptor.getAllValues()) {
+			assertArrayEquals(new MenuEntry[] {
+					menu("Cancel", "", MenuAction.CANCEL),
+					menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP),
+					menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP),
+					menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+			}, swapped);
+		}
+	}
+	
+	@Test
+	public void testIndexRule() throws Exception {
+		lenient().when(config.bankCustomization()).thenReturn(true);
+		bankMenuEntrySwapperPlugin.startUp();
+		
+		param1 = 786445;
+		ClientTick clientTick = new ClientTick();
+		MenuEntry[] baseEntries = new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP),
+		};
+		// Saved by an older version as the index of Withdraw-5
+		swapRuleStore.set(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE), SwapRuleStore.indexRule(2));
+		
+		entries = baseEntries;
+		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		verify(client, times(1)).setMenuEntries(any(MenuEntry[].class));
+		assertEquals(op("Withdraw-5"), swapRuleStore.get(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE)));
+		
+		// The op now matches wherever the entry is in the menu
+		entries = new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP),
+		};
+		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		
+		ArgumentCaptor<MenuEntry[]> argumentCaptor = ArgumentCaptor.forClass(MenuEntry[].class);
+		verify(client, times(2)).setMenuEntries(argumentCaptor.capture());
+		assertArrayEquals(new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+		}, argumentCaptor.getValue());
+	}
+	
+	@Test
+	public void testWithdraw1Rule() throws Exception {
+		lenient().when(config.bankCustomization()).thenReturn(true);
+		bankMenuEntrySwapperPlugin.startUp();
+		
+		param1 = 786445;
+		ClientTick clientTick = new ClientTick();
+		swapRuleStore.set(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE), MenuEntryClassifier.WITHDRAW_1_OP);
+		
+		// With a default quantity of 1, Withdraw-1 is only shown as the default quantity option
+		entries = new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP, MenuEntryClassifier.DEFAULT_QUANTITY_OP),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+		};
+		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		
+		ArgumentCaptor<MenuEntry[]> argumentCaptor = ArgumentCaptor.forClass(MenuEntry[].class);
+		verify(client, times(1)).setMenuEntries(argumentCaptor.capture());
+		assertArrayEquals(new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP, MenuEntryClassifier.DEFAULT_QUANTITY_OP),
+		}, argumentCaptor.getValue());
+		
+		// Any other default quantity is not swapped in
+		entries = new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Withdraw-All", AIR_RUNE, MenuAction.CC_OP, MenuEntryClassifier.DEFAULT_QUANTITY_OP),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+		};
+		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		verify(client, times(1)).setMenuEntries(any(MenuEntry[].class));
+	}
+	
+	@Test
+	public void testWithdraw1DefaultQuantityChanged() throws Exception {
+		lenient().when(config.bankCustomization()).thenReturn(true);
+		bankMenuEntrySwapperPlugin.startUp();
+		
+		param1 = 786445;
+		MenuOpened menuOpened = new MenuOpened();
+		entries = new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP),
+		};
+		menuOpened.setMenuEntries(entries);
+		bankMenuEntrySwapperPlugin.onMenuOpened(menuOpened);
+		
+		MenuEntry swapEntry = null;
+		for (MenuEntry entry : client.getMenuEntries()) {
+			if (entry.getOption().equals("Swap shift click Withdraw-1")) {
+				swapEntry = entry;
+			}
+		}
+		assertNotNull(swapEntry);
+		((TestMenuEntry) swapEntry).getClickConsumer().accept(swapEntry);
+		// Set while the default quantity is 1, the rule still keeps its own op
+		assertEquals(MenuEntryClassifier.WITHDRAW_1_OP, swapRuleStore.get(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE)));
+		
+		// With a default quantity of 5, Withdraw-1 is shown with its own op
+		entries = new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP, 3),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP, MenuEntryClassifier.WITHDRAW_1_OP),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP, MenuEntryClassifier.DEFAULT_QUANTITY_OP),
+		};
+		bankMenuEntrySwapperPlugin.onClientTick(new ClientTick());
+		
+		ArgumentCaptor<MenuEntry[]> argumentCaptor = ArgumentCaptor.forClass(MenuEntry[].class);
+		verify(client, times(1)).setMenuEntries(argumentCaptor.capture());
+		assertArrayEquals(new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP, 3),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP, MenuEntryClassifier.DEFAULT_QUANTITY_OP),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP, MenuEntryClassifier.WITHDRAW_1_OP),
+		}, argumentCaptor.getValue());
+	}
+	
+	@Test
+	public void testStackedItems() throws Exception {
+		lenient().when(config.bankCustomization()).thenReturn(true);
+		bankMenuEntrySwapperPlugin.startUp();
+		
+		param1 = 786445;
+		ClientTick clientTick = new ClientTick();
+		MenuEntry[] baseEntries = new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Withdraw-5", WATER_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-1", WATER_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP),
+		};
+		
+		// A rule pointing at the current left click option needs no update
+		swapRuleStore.set(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE), op("Withdraw-1"));
+		entries = baseEntries;
+		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		verify(client, times(0)).setMenuEntries(any(MenuEntry[].class));
+		
+		// Both items match, but only the entry nearest the top is promoted, in a single update
+		swapRuleStore.set(MenuEntryClassifier.BANK, true, getItemId(WATER_RUNE), op("Withdraw-5"));
+		swapRuleStore.set(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE), op("Withdraw-5"));
+		entries = baseEntries;
+		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		
+		ArgumentCaptor<MenuEntry[]> argumentCaptor = ArgumentCaptor.forClass(MenuEntry[].class);
+		verify(client, times(1)).setMenuEntries(argumentCaptor.capture());
+		assertArrayEquals(new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Withdraw-5", WATER_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-1", WATER_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+		}, argumentCaptor.getValue());
+	}
+	
+	@Test
+	public void testEventDriven() throws Exception {
+		lenient().when(config.bankCustomization()).thenReturn(true);
+		when(config.eventDrivenSwapping()).thenReturn(true);
+		bankMenuEntrySwapperPlugin.startUp();
+		
+		param1 = 786445;
+		PostMenuSort postMenuSort = new PostMenuSort();
+		MenuEntry[] baseEntries = new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP),
+		};
+		swapRuleStore.set(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE), op("Withdraw-5"));
+		entries = baseEntries;
+		
+		// The client tick is not used in this mode
+		bankMenuEntrySwapperPlugin.onClientTick(new ClientTick());
+		
+		// A menu without bank entries is never read
+		bankMenuEntrySwapperPlugin.onMenuEntryAdded(new MenuEntryAdded(baseEntries[0]));
+		bankMenuEntrySwapperPlugin.onPostMenuSort(postMenuSort);
+		verify(client, never()).getMenuEntries();
+		
+		// Nor is an open menu
+		when(client.isMenuOpen()).thenReturn(true);
+		for (MenuEntry entry : baseEntries) {
+			bankMenuEntrySwapperPlugin.onMenuEntryAdded(new MenuEntryAdded(entry));
+		}
+		bankMenuEntrySwapperPlugin.onPostMenuSort(postMenuSort);
+		verify(client, never()).getMenuEntries();
+		when(client.isMenuOpen()).thenReturn(false);
+		
+		for (MenuEntry entry : baseEntries) {
+			bankMenuEntrySwapperPlugin.onMenuEntryAdded(new MenuEntryAdded(entry));
+		}
+		bankMenuEntrySwapperPlugin.onPostMenuSort(postMenuSort);
+		
+		ArgumentCaptor<MenuEntry[]> argumentCaptor = ArgumentCaptor.forClass(MenuEntry[].class);
+		verify(client, times(1)).setMenuEntries(argumentCaptor.capture());
+		assertArrayEquals(new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Examine", AIR_RUNE, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+		}, argumentCaptor.getValue());
+	}
+	
+	@Test
+	public void testDepositBox() throws Exception {
+		lenient().when(config.bankInventoryCustomization()).thenReturn(true);
+		bankMenuEntrySwapperPlugin.startUp();
+		
+		WidgetLoaded widgetLoaded = new WidgetLoaded();
+		widgetLoaded.setGroupId(WidgetID.DEPOSIT_BOX_GROUP_ID);
+		bankMenuEntrySwapperPlugin.onWidgetLoaded(widgetLoaded);
+		
+		param1 = WidgetID.DEPOSIT_BOX_GROUP_ID << 16 | 2;
+		entries = new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Deposit-5", AIR_RUNE, MenuAction.CC_OP, 3),
+				menu("Deposit-1", AIR_RUNE, MenuAction.CC_OP, 2),
+		};
+		// Rules of the bank don't apply to the deposit box
+		swapRuleStore.set(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE), 2);
+		swapRuleStore.set(SwapInterface.DEPOSIT_BOX.namespace, true, getItemId(AIR_RUNE), 3);
+		bankMenuEntrySwapperPlugin.onClientTick(new ClientTick());
+		
+		ArgumentCaptor<MenuEntry[]> argumentCaptor = ArgumentCaptor.forClass(MenuEntry[].class);
+		verify(client, times(1)).setMenuEntries(argumentCaptor.capture());
+		assertArrayEquals(new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Deposit-1", AIR_RUNE, MenuAction.CC_OP, 2),
+				menu("Deposit-5", AIR_RUNE, MenuAction.CC_OP, 3),
+		}, argumentCaptor.getValue());
+	}
+	
+	@Test
+	public void testLoadOnLogin() throws Exception {
+		lenient().when(config.bankCustomization()).thenReturn(true);
+		bankMenuEntrySwapperPlugin.startUp();
+		
+		IntIntMap[] tables = SwapRules.emptyTables();
+		tables[1].put(getItemId(AIR_RUNE), op("Withdraw-5"));
+		when(configManager.getRSProfileKey()).thenReturn("account");
+		when(configManager.getConfiguration(BankMenuEntrySwapperConfig.GROUP, "account", SwapRuleStore.RULES_KEY)).thenReturn(SwapRuleCodec.encode(tables));
+		
+		GameStateChanged gameStateChanged = new GameStateChanged();
+		gameStateChanged.setGameState(GameState.LOGGED_IN);
+		bankMenuEntrySwapperPlugin.onGameStateChanged(gameStateChanged);
+		assertEquals(op("Withdraw-5"), swapRuleStore.get(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE)));
+		
+		// The rules are released on logout
+		gameStateChanged.setGameState(GameState.LOGIN_SCREEN);
+		bankMenuEntrySwapperPlugin.onGameStateChanged(gameStateChanged);
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE)));
+	}
+	
+	@Test
+	public void testBankClosed() throws Exception {
+		lenient().when(config.bankCustomization()).thenReturn(true);
+		bankMenuEntrySwapperPlugin.startUp();
+		
+		param1 = 786445;
+		ClientTick clientTick = new ClientTick();
+		entries = new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP),
+		};
+		swapRuleStore.set(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE), op("Withdraw-5"));
+		
+		// Nothing is read while the bank is closed
+		bankMenuEntrySwapperPlugin.onWidgetClosed(new WidgetClosed(WidgetID.BANK_GROUP_ID, 0, true));
+		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		verify(client, never()).getMenuEntries();
+		
+		WidgetLoaded widgetLoaded = new WidgetLoaded();
+		widgetLoaded.setGroupId(WidgetID.BANK_GROUP_ID);
+		bankMenuEntrySwapperPlugin.onWidgetLoaded(widgetLoaded);
+		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		verify(client, times(1)).setMenuEntries(any(MenuEntry[].class));
+	}
+	
+	@Test
+	public void testConfigChanged() throws Exception {
+		bankMenuEntrySwapperPlugin.startUp();
+		
+		param1 = 786445;
+		ClientTick clientTick = new ClientTick();
+		entries = new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP),
+		};
+		swapRuleStore.set(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE), op("Withdraw-5"));
+		
+		// The config is reloaded on the client thread, not by the thread posting the change
+		lenient().when(config.bankCustomization()).thenReturn(true);
+		ConfigChanged configChanged = new ConfigChanged();
+		configChanged.setGroup(BankMenuEntrySwapperConfig.GROUP);
+		configChanged.setKey("bankCustomization");
+		bankMenuEntrySwapperPlugin.onConfigChanged(configChanged);
+		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		verify(client, never()).setMenuEntries(any(MenuEntry[].class));
+		
+		ArgumentCaptor<Runnable> argumentCaptor = ArgumentCaptor.forClass(Runnable.class);
+		verify(clientThread, atLeastOnce()).invokeLater(argumentCaptor.capture());
+		argumentCaptor.getValue().run();
+		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		verify(client, times(1)).setMenuEntries(any(MenuEntry[].class));
+	}
+	
+	@Test
+	public void testStats() throws Exception {
+		lenient().when(config.bankCustomization()).thenReturn(true);
+		bankMenuEntrySwapperPlugin.startUp();
+		
+		param1 = 786445;
+		ClientTick clientTick = new ClientTick();
+		entries = new MenuEntry[] {
+				menu("Cancel", "", MenuAction.CANCEL),
+				menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP),
+				menu("Withdraw-1", AIR_RUNE, MenuAction.CC_OP),
+		};
+		swapRuleStore.set(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE), op("Withdraw-5"));
+		
+		// The second tick repeats the decision of the first
+		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		assertEquals(2, swapMetrics.get(SwapMetrics.TICKS_PROCESSED));
+		assertEquals(1, swapMetrics.get(SwapMetrics.DECISIONS_REUSED));
+		assertEquals(2, swapMetrics.get(SwapMetrics.SWAPS_APPLIED));
+		assertEquals(2, swapMetrics.samples(SwapMetrics.CLIENT_TICK));
+		assertEquals(1, swapMetrics.samples(SwapMetrics.RULE_LOOKUP));
+		
+		bankMenuEntrySwapperPlugin.onCommandExecuted(new CommandExecuted("bmes", new String[0]));
+		verify(chatMessageManager, times(SwapMetrics.SECTION_NAMES.length + 1)).queue(any(QueuedMessage.class));
+		
+		bankMenuEntrySwapperPlugin.onCommandExecuted(new CommandExecuted("bmes", new String[] {"reset"}));
+		assertEquals(0, swapMetrics.get(SwapMetrics.TICKS_PROCESSED));
+		assertEquals(0, swapMetrics.samples(SwapMetrics.CLIENT_TICK));
+	}
+	
+	@Test
+	public void testTickBudget() throws Exception {
+		lenient().when(config.bankCustomization()).thenReturn(true);
+		// Any evaluation goes over a budget of 1us
+		when(config.tickBudget()).thenReturn(1);
+		bankMenuEntrySwapperPlugin.startUp();
+		
+		param1 = 786445;
+		ClientTick clientTick = new ClientTick();
+		MenuEntry[] menu = new MenuEntry[20];
+		menu[0] = menu("Cancel", "", MenuAction.CANCEL);
+		menu[1] = menu("Withdraw-5", AIR_RUNE, MenuAction.CC_OP);
+		for (int i = 2; i < menu.length; i++) {
+			menu[i] = menu("Walk here", "", MenuAction.WALK);
+		}
+		entries = menu;
+		swapRuleStore.set(MenuEntryClassifier.BANK, true, getItemId(AIR_RUNE), op("Withdraw-5"));
+		
+		MenuEntry[] other = Arrays.copyOf(menu, menu.length);
+		other[2] = menu("Walk here", "", MenuAction.CANCEL);
+		
+		// The whole menu is evaluated until the budget is exceeded several times in a row, so a
+		// single slow tick changes nothing
+		for (int i = 0; i < BankMenuEntrySwapperPlugin.OVER_BUDGET_STREAK; i++) {
+			assertEquals(0, swapMetrics.get(SwapMetrics.DEGRADED_TICKS));
+			entries = i % 2 == 0 ? menu : other;
+			bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		}
+		verify(client, times(BankMenuEntrySwapperPlugin.OVER_BUDGET_STREAK)).setMenuEntries(any(MenuEntry[].class));
+		
+		// A changed menu is then only evaluated from the top, which misses the entry
+		entries = BankMenuEntrySwapperPlugin.OVER_BUDGET_STREAK % 2 == 0 ? menu : other;
+		bankMenuEntrySwapperPlugin.onClientTick(clientTick);
+		verify(client, times(BankMenuEntrySwapperPlugin.OVER_BUDGET_STREAK)).setMenuEntries(any(MenuEntry[].class));
+		assertEquals(1, swapMetrics.get(SwapMetrics.DEGRADED_TICKS));
+	}
+}
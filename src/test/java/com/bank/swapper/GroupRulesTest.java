@@ -0,0 +1,73 @@
+package com.bank.swapper;
+
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+public class GroupRulesTest {
+	private static final int BANK = 0;
+	private static final int BANK_SHIFT = 1;
+	private static final int BANK_INVENTORY = 2;
+	private static final int AIR_RUNE = 556;
+	private static final int PRAYER_POTION = 2434;
+	private static final int SUPER_ATTACK = 2436;
+	
+	private final Map<Integer, String> names = new HashMap<>();
+	private final Map<Integer, Integer> lookups = new HashMap<>();
+	
+	@Test
+	public void testCompile() {
+		names.put(AIR_RUNE, "Air rune");
+		names.put(PRAYER_POTION, "Prayer potion(4)");
+		names.put(SUPER_ATTACK, "Super attack(4)");
+		
+		GroupRules groups = compile("# Runes\n" +
+				"554-566 = Withdraw-All\n" +
+				"\n" +
+				"*Potion*, super * = shift withdraw-1\n" +
+				"2436 = Withdraw-X\n" +
+				"bones = Deposit-All\n" +
+				"air rune = Withdraw-Nothing\n" +
+				"no options\n");
+		
+		assertEquals(7, groups.get(BANK, AIR_RUNE));
+		assertEquals(SwapRuleStore.NONE, groups.get(BANK, 553));
+		assertEquals(SwapRuleStore.NONE, groups.get(BANK, 567));
+		assertEquals(MenuEntryClassifier.WITHDRAW_1_OP, groups.get(BANK_SHIFT, PRAYER_POTION));
+		assertEquals(MenuEntryClassifier.WITHDRAW_1_OP, groups.get(BANK_SHIFT, SUPER_ATTACK));
+		assertEquals(6, groups.get(BANK, SUPER_ATTACK));
+		assertEquals(SwapRuleStore.NONE, groups.get(BANK, PRAYER_POTION));
+		
+		// Names are only looked up once per item, and an id line matches without looking up the name
+		groups.get(BANK_SHIFT, PRAYER_POTION);
+		assertEquals(1, (int) lookups.get(PRAYER_POTION));
+		assertNull(lookups.get(AIR_RUNE));
+		
+		assertEquals(SwapRuleStore.NONE, groups.get(BANK_INVENTORY, AIR_RUNE));
+	}
+	
+	@Test
+	public void testFirstMatch() {
+		names.put(PRAYER_POTION, "Prayer potion(4)");
+		
+		GroupRules groups = compile("prayer* = Withdraw-5\n*potion* = Withdraw-10\n");
+		assertEquals(3, groups.get(BANK, PRAYER_POTION));
+	}
+	
+	@Test
+	public void testEmpty() {
+		assertSame(GroupRules.EMPTY, compile(""));
+		assertSame(GroupRules.EMPTY, compile(null));
+		assertEquals(SwapRuleStore.NONE, GroupRules.EMPTY.get(BANK, AIR_RUNE));
+	}
+	
+	private GroupRules compile(String text) {
+		return GroupRules.compile(text, id -> {
+			lookups.merge(id, 1, Integer::sum);
+			return names.get(id);
+		});
+	}
+}
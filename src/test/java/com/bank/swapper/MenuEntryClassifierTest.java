@@ -0,0 +1,67 @@
+package com.bank.swapper;
+
+import net.runelite.api.MenuAction;
+import net.runelite.api.MenuEntry;
+import net.runelite.api.widgets.WidgetID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class MenuEntryClassifierTest {
+	private static MenuEntry entry(int groupId, MenuAction type, int identifier) {
+		return new TestMenuEntry()
+				.setParam1(groupId << 16 | 13)
+				.setType(type)
+				.setIdentifier(identifier);
+	}
+	
+	@Test
+	public void testClassify() {
+		assertEquals(MenuEntryClassifier.BANK, MenuEntryClassifier.classify(entry(WidgetID.BANK_GROUP_ID, MenuAction.CC_OP, 1)));
+		assertEquals(MenuEntryClassifier.BANK, MenuEntryClassifier.classify(entry(WidgetID.BANK_GROUP_ID, MenuAction.CC_OP_LOW_PRIORITY, 8)));
+		assertEquals(MenuEntryClassifier.OTHER, MenuEntryClassifier.classify(entry(WidgetID.BANK_GROUP_ID, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP)));
+		assertEquals(MenuEntryClassifier.OTHER, MenuEntryClassifier.classify(entry(WidgetID.BANK_GROUP_ID, MenuAction.RUNELITE, 1)));
+		
+		assertEquals(MenuEntryClassifier.BANK_INVENTORY, MenuEntryClassifier.classify(entry(WidgetID.BANK_INVENTORY_GROUP_ID, MenuAction.CC_OP, 2)));
+		assertEquals(MenuEntryClassifier.OTHER, MenuEntryClassifier.classify(entry(WidgetID.BANK_INVENTORY_GROUP_ID, MenuAction.CC_OP_LOW_PRIORITY, MenuEntryClassifier.EXAMINE_OP)));
+		
+		assertEquals(MenuEntryClassifier.GROUP_STORAGE, MenuEntryClassifier.classify(entry(WidgetID.GROUP_STORAGE_GROUP_ID, MenuAction.CC_OP, 1)));
+		assertEquals(MenuEntryClassifier.OTHER, MenuEntryClassifier.classify(entry(WidgetID.GROUP_STORAGE_GROUP_ID, MenuAction.RUNELITE, 1)));
+		assertEquals(MenuEntryClassifier.GROUP_STORAGE_INVENTORY, MenuEntryClassifier.classify(entry(WidgetID.GROUP_STORAGE_INVENTORY_GROUP_ID, MenuAction.CC_OP_LOW_PRIORITY, 3)));
+		
+		assertEquals(SwapInterface.DEPOSIT_BOX.namespace, MenuEntryClassifier.classify(entry(WidgetID.DEPOSIT_BOX_GROUP_ID, MenuAction.CC_OP, 2)));
+		assertEquals(SwapInterface.SEED_VAULT_INVENTORY.namespace, MenuEntryClassifier.classify(entry(WidgetID.SEED_VAULT_INVENTORY_GROUP_ID, MenuAction.CC_OP, 1)));
+		assertEquals(MenuEntryClassifier.OTHER, MenuEntryClassifier.classify(entry(WidgetID.SEED_VAULT_INVENTORY_GROUP_ID, MenuAction.WIDGET_TARGET, 1)));
+		
+		assertEquals(MenuEntryClassifier.OTHER, MenuEntryClassifier.classify(entry(0, MenuAction.CANCEL, 0)));
+		assertEquals(MenuEntryClassifier.OTHER, MenuEntryClassifier.classify(entry(WidgetID.BANK_GROUP_ID + 64, MenuAction.CC_OP, 1)));
+	}
+	
+	@Test
+	public void testIsBankGroup() {
+		assertTrue(MenuEntryClassifier.isBankGroup(WidgetID.BANK_GROUP_ID));
+		assertTrue(MenuEntryClassifier.isBankGroup(WidgetID.BANK_INVENTORY_GROUP_ID));
+		assertTrue(MenuEntryClassifier.isBankGroup(WidgetID.GROUP_STORAGE_GROUP_ID));
+		assertTrue(MenuEntryClassifier.isBankGroup(WidgetID.GROUP_STORAGE_INVENTORY_GROUP_ID));
+		assertFalse(MenuEntryClassifier.isBankGroup(0));
+		assertFalse(MenuEntryClassifier.isBankGroup(0xFFFF));
+	}
+	
+	@Test
+	public void testNamespace() {
+		assertEquals(MenuEntryClassifier.BANK, MenuEntryClassifier.namespace(WidgetID.BANK_GROUP_ID));
+		assertEquals(MenuEntryClassifier.GROUP_STORAGE_INVENTORY, MenuEntryClassifier.namespace(WidgetID.GROUP_STORAGE_INVENTORY_GROUP_ID));
+		assertEquals(SwapInterface.SEED_VAULT.namespace, MenuEntryClassifier.namespace(WidgetID.SEED_VAULT_GROUP_ID));
+		assertEquals(MenuEntryClassifier.OTHER, MenuEntryClassifier.namespace(-1));
+		assertEquals(MenuEntryClassifier.OTHER, MenuEntryClassifier.namespace(Integer.MAX_VALUE));
+	}
+	
+	@Test
+	public void testSwapInterface() {
+		for (SwapInterface swapInterface : SwapInterface.values()) {
+			assertEquals(swapInterface.namespace, MenuEntryClassifier.namespace(swapInterface.groupId));
+			assertEquals(swapInterface, MenuEntryClassifier.swapInterface(swapInterface.namespace));
+		}
+	}
+}
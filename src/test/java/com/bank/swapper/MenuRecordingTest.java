@@ -0,0 +1,82 @@
+package com.bank.swapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import net.runelite.api.MenuAction;
+import net.runelite.api.MenuEntry;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class MenuRecordingTest {
+	private static final int AIR_RUNE = 556;
+	
+	@Test
+	public void testRoundTrip() throws IOException {
+		IntIntMap[] tables = SwapRules.emptyTables();
+		tables[1].put(AIR_RUNE, 3);
+		String rules = SwapRuleCodec.encode(tables);
+		
+		String groupSwaps = "*rune = Withdraw-5\n";
+		
+		MenuRecording.Writer writer = new MenuRecording.Writer(rules, groupSwaps, true, false, 1 << 20);
+		MenuEntry[] menu = {
+				new TestMenuEntry().setOption("Cancel").setTarget("").setType(MenuAction.CANCEL),
+				entry("Withdraw-5", 3),
+				entry("Withdraw-1", 1),
+		};
+		assertTrue(writer.write(menu, false));
+		int size = writer.finish().length;
+		// An unchanged menu is recorded as a single byte
+		assertTrue(writer.write(menu, true));
+		assertEquals(size + 1, writer.finish().length);
+		assertTrue(writer.write(new MenuEntry[] {menu[0], menu[2]}, false));
+		assertEquals(3, writer.frames());
+		
+		MenuRecording recording = MenuRecording.read(new ByteArrayInputStream(writer.finish()));
+		assertEquals(rules, recording.rules);
+		assertEquals(groupSwaps, recording.groupSwaps);
+		assertTrue(recording.bankCustomization);
+		assertFalse(recording.bankInventoryCustomization);
+		assertEquals(3, recording.frames.size());
+		
+		MenuRecording.Frame frame = recording.frames.get(0);
+		assertFalse(frame.shift);
+		assertArrayEquals(new String[] {"Cancel", "Withdraw-5", "Withdraw-1"}, frame.options);
+		assertArrayEquals(new int[] {MenuAction.CANCEL.getId(), MenuAction.CC_OP.getId(), MenuAction.CC_OP.getId()}, frame.types);
+		assertArrayEquals(new int[] {-1, AIR_RUNE, AIR_RUNE}, frame.itemIds);
+		assertArrayEquals(new int[] {0, 786445, 786445}, frame.param1s);
+		
+		assertTrue(recording.frames.get(1).shift);
+		assertTrue(recording.frames.get(1).sameMenu(frame));
+		assertArrayEquals(new String[] {"Cancel", "Withdraw-1"}, recording.frames.get(2).options);
+	}
+	
+	@Test
+	public void testFull() {
+		MenuRecording.Writer writer = new MenuRecording.Writer("", "", false, false, 64);
+		MenuEntry[] menu = {entry("Withdraw-5", 3)};
+		while (writer.write(menu, false)) {
+			menu = new MenuEntry[] {entry("Withdraw-" + writer.frames(), 3)};
+		}
+		assertTrue(writer.finish().length < 64 + 32);
+	}
+	
+	@Test(expected = IOException.class)
+	public void testNotARecording() throws IOException {
+		MenuRecording.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4}));
+	}
+	
+	private static MenuEntry entry(String option, int identifier) {
+		TestMenuEntry entry = new TestMenuEntry();
+		entry.setOption(option)
+				.setTarget("Air rune")
+				.setType(MenuAction.CC_OP)
+				.setIdentifier(identifier)
+				.setParam1(786445);
+		entry.setItemId(AIR_RUNE);
+		return entry;
+	}
+}
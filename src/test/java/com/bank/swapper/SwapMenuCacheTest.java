@@ -0,0 +1,48 @@
+package com.bank.swapper;
+
+import java.util.Collections;
+import java.util.List;
+import net.runelite.api.MenuAction;
+import net.runelite.api.MenuEntry;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+public class SwapMenuCacheTest {
+	private static final int AIR_RUNE = 556;
+	
+	private final SwapMenuCache swapMenuCache = new SwapMenuCache();
+	
+	@Test
+	public void testGet() {
+		MenuEntry[] entries = menu("Withdraw-X", "Withdraw-1");
+		List<SwapOption> options = swapMenuCache.put(MenuEntryClassifier.BANK, AIR_RUNE, 1, entries, Collections.singletonList(
+				new SwapOption(SwapOption.RESET, MenuEntryClassifier.BANK, null, "Air rune", AIR_RUNE, -1)));
+		
+		assertSame(options, swapMenuCache.get(MenuEntryClassifier.BANK, AIR_RUNE, 1, menu("Withdraw-X", "Withdraw-1")));
+		
+		// Another interface, newer rules or a different menu all need the options rebuilt
+		assertNull(swapMenuCache.get(MenuEntryClassifier.BANK_INVENTORY, AIR_RUNE, 1, entries));
+		assertNull(swapMenuCache.get(MenuEntryClassifier.BANK, AIR_RUNE, 2, entries));
+		assertNull(swapMenuCache.get(MenuEntryClassifier.BANK, AIR_RUNE, 1, menu("Withdraw-16", "Withdraw-1")));
+		assertNull(swapMenuCache.get(MenuEntryClassifier.BANK, AIR_RUNE, 1, menu("Withdraw-1")));
+		MenuEntry[] otherWidget = menu("Withdraw-X", "Withdraw-1");
+		otherWidget[2].setParam1(1);
+		assertNull(swapMenuCache.get(MenuEntryClassifier.BANK, AIR_RUNE, 1, otherWidget));
+		// Options are compared by their text, not their hash; "Aa" and "BB" hash the same
+		swapMenuCache.put(MenuEntryClassifier.BANK, AIR_RUNE, 1, menu("Withdraw-Aa"), options);
+		assertNull(swapMenuCache.get(MenuEntryClassifier.BANK, AIR_RUNE, 1, menu("Withdraw-BB")));
+		
+		swapMenuCache.clear();
+		assertNull(swapMenuCache.get(MenuEntryClassifier.BANK, AIR_RUNE, 1, entries));
+	}
+	
+	private static MenuEntry[] menu(String... options) {
+		MenuEntry[] entries = new MenuEntry[options.length + 1];
+		entries[0] = new TestMenuEntry().setOption("Cancel").setTarget("").setType(MenuAction.CANCEL);
+		for (int i = 0; i < options.length; i++) {
+			entries[i + 1] = new TestMenuEntry().setOption(options[i]).setTarget("Air rune").setType(MenuAction.CC_OP);
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,36 @@
+package com.bank.swapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class SwapMetricsTest {
+	private final SwapMetrics metrics = new SwapMetrics();
+	
+	@Test
+	public void testPercentile() {
+		assertEquals(0, metrics.percentile(SwapMetrics.CLIENT_TICK, 0.5));
+		
+		for (int i = 1; i <= 100; i++) {
+			metrics.add(SwapMetrics.CLIENT_TICK, i * 1_000L);
+		}
+		
+		// Within the width of a bucket, an eighth of the value
+		long p50 = metrics.percentile(SwapMetrics.CLIENT_TICK, 0.5);
+		assertTrue(p50 >= 50_000 && p50 <= 50_000 * 9 / 8);
+		long p99 = metrics.percentile(SwapMetrics.CLIENT_TICK, 0.99);
+		assertTrue(p99 >= 99_000 && p99 <= 100_000);
+		assertEquals(100_000, metrics.max(SwapMetrics.CLIENT_TICK));
+		assertEquals(0, metrics.samples(SwapMetrics.SWAP_MENU));
+		
+		metrics.reset();
+		assertEquals(0, metrics.samples(SwapMetrics.CLIENT_TICK));
+	}
+	
+	@Test
+	public void testFormatNanos() {
+		assertEquals("850ns", SwapMetrics.formatNanos(850));
+		assertEquals("12.5us", SwapMetrics.formatNanos(12_500));
+		assertEquals("3.25ms", SwapMetrics.formatNanos(3_250_000));
+	}
+}
@@ -0,0 +1,322 @@
+package com.bank.swapper;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import net.runelite.client.config.ConfigManager;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.Mock;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SwapRuleStoreTest {
+	private static final int AIR_RUNE = 556;
+	private static final int WATER_RUNE = 557;
+	
+	@Mock
+	ConfigManager configManager;
+	
+	@Mock
+	ScheduledExecutorService executor;
+	
+	private SwapRuleStore swapRuleStore;
+	
+	@Before
+	public void before() {
+		swapRuleStore = new SwapRuleStore(configManager, executor);
+		swapRuleStore.load(null);
+	}
+	
+	@Test
+	public void testMigrateLegacyRules() {
+		when(configManager.getConfigurationKeys(BankMenuEntrySwapperConfig.GROUP + ".bank_")).thenReturn(Arrays.asList(
+				"bankmenuentryswapper.bank_556",
+				"bankmenuentryswapper.bank_shift_556",
+				"bankmenuentryswapper.bank_inventory_557",
+				"bankmenuentryswapper.bank_inventory_shift_557",
+				"bankmenuentryswapper.bank_shift_junk"));
+		when(configManager.getConfiguration(BankMenuEntrySwapperConfig.GROUP, "bank_556")).thenReturn("7");
+		when(configManager.getConfiguration(BankMenuEntrySwapperConfig.GROUP, "bank_shift_556")).thenReturn("5");
+		when(configManager.getConfiguration(BankMenuEntrySwapperConfig.GROUP, "bank_inventory_557")).thenReturn("3");
+		when(configManager.getConfiguration(BankMenuEntrySwapperConfig.GROUP, "bank_inventory_shift_557")).thenReturn("2");
+		when(configManager.getConfiguration(BankMenuEntrySwapperConfig.GROUP, "bank_shift_junk")).thenReturn("1");
+		
+		swapRuleStore.load(null);
+		
+		// Legacy values are menu indexes
+		assertEquals(SwapRuleStore.indexRule(7), swapRuleStore.get(MenuEntryClassifier.BANK, false, AIR_RUNE));
+		assertEquals(SwapRuleStore.indexRule(5), swapRuleStore.get(MenuEntryClassifier.BANK, true, AIR_RUNE));
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(MenuEntryClassifier.BANK_INVENTORY, false, AIR_RUNE));
+		assertEquals(SwapRuleStore.indexRule(3), swapRuleStore.get(MenuEntryClassifier.BANK_INVENTORY, false, WATER_RUNE));
+		assertEquals(SwapRuleStore.indexRule(2), swapRuleStore.get(MenuEntryClassifier.BANK_INVENTORY, true, WATER_RUNE));
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(MenuEntryClassifier.BANK, false, WATER_RUNE));
+		
+		// The rules are written under one key and the old keys removed
+		ArgumentCaptor<String> encoded = ArgumentCaptor.forClass(String.class);
+		verify(configManager).setConfiguration(eq(BankMenuEntrySwapperConfig.GROUP), eq(SwapRuleStore.RULES_KEY), encoded.capture());
+		assertTrue(swapRuleStore.isStored(encoded.getValue()));
+		verify(configManager).unsetConfiguration(BankMenuEntrySwapperConfig.GROUP, "bank_556");
+		verify(configManager).unsetConfiguration(BankMenuEntrySwapperConfig.GROUP, "bank_shift_556");
+		verify(configManager).unsetConfiguration(BankMenuEntrySwapperConfig.GROUP, "bank_inventory_557");
+		verify(configManager).unsetConfiguration(BankMenuEntrySwapperConfig.GROUP, "bank_inventory_shift_557");
+	}
+	
+	@Test
+	public void testLoadEncoded() {
+		swapRuleStore.set(MenuEntryClassifier.BANK, false, AIR_RUNE, 7);
+		swapRuleStore.set(MenuEntryClassifier.BANK_INVENTORY, true, WATER_RUNE, 300);
+		swapRuleStore.flush();
+		
+		ArgumentCaptor<String> encoded = ArgumentCaptor.forClass(String.class);
+		verify(configManager).setConfiguration(eq(BankMenuEntrySwapperConfig.GROUP), eq(SwapRuleStore.RULES_KEY), encoded.capture());
+		when(configManager.getConfiguration(BankMenuEntrySwapperConfig.GROUP, SwapRuleStore.RULES_KEY)).thenReturn(encoded.getValue());
+		clearInvocations(configManager);
+		
+		SwapRuleStore loaded = new SwapRuleStore(configManager, executor);
+		loaded.load(null);
+		assertEquals(7, loaded.get(MenuEntryClassifier.BANK, false, AIR_RUNE));
+		assertEquals(300, loaded.get(MenuEntryClassifier.BANK_INVENTORY, true, WATER_RUNE));
+		assertEquals(SwapRuleStore.NONE, loaded.get(MenuEntryClassifier.BANK, true, AIR_RUNE));
+		verify(configManager, never()).getConfigurationKeys(BankMenuEntrySwapperConfig.GROUP + ".bank_");
+	}
+	
+	@Test
+	public void testLoadIndexRules() {
+		// Version 1 blob holding menu index 7 for the left click of item 556
+		String encoded = Base64.getEncoder().encodeToString(new byte[] {1, 1, 1, (byte) 0xAC, 0x04, 7});
+		when(configManager.getConfiguration(BankMenuEntrySwapperConfig.GROUP, SwapRuleStore.RULES_KEY)).thenReturn(encoded);
+		
+		swapRuleStore.load(null);
+		int rule = swapRuleStore.get(MenuEntryClassifier.BANK, false, AIR_RUNE);
+		assertTrue(SwapRuleStore.isIndexRule(rule));
+		assertEquals(7, SwapRuleStore.ruleIndex(rule));
+		assertFalse(SwapRuleStore.isIndexRule(SwapRuleStore.NONE));
+	}
+	
+	@Test
+	public void testLoadRsProfile() {
+		IntIntMap[] tables = SwapRules.emptyTables();
+		tables[0].put(AIR_RUNE, 7);
+		String shared = SwapRuleCodec.encode(tables);
+		when(configManager.getConfiguration(BankMenuEntrySwapperConfig.GROUP, SwapRuleStore.RULES_KEY)).thenReturn(shared);
+		
+		// An account without rules starts from a copy of the shared ones
+		swapRuleStore.load("account");
+		assertTrue(swapRuleStore.isLoaded("account"));
+		assertEquals(7, swapRuleStore.get(MenuEntryClassifier.BANK, false, AIR_RUNE));
+		
+		ArgumentCaptor<Runnable> write = ArgumentCaptor.forClass(Runnable.class);
+		verify(executor).execute(write.capture());
+		write.getValue().run();
+		verify(configManager).setConfiguration(BankMenuEntrySwapperConfig.GROUP, "account", SwapRuleStore.RULES_KEY, shared);
+		
+		// Changes to the shared rules or another account's are not this account's
+		tables[0].put(AIR_RUNE, 3);
+		swapRuleStore.applyConfigChange(null, SwapRuleStore.RULES_KEY, SwapRuleCodec.encode(tables));
+		swapRuleStore.applyConfigChange("other", SwapRuleStore.RULES_KEY, SwapRuleCodec.encode(tables));
+		assertEquals(7, swapRuleStore.get(MenuEntryClassifier.BANK, false, AIR_RUNE));
+		swapRuleStore.applyConfigChange("account", SwapRuleStore.RULES_KEY, SwapRuleCodec.encode(tables));
+		assertEquals(3, swapRuleStore.get(MenuEntryClassifier.BANK, false, AIR_RUNE));
+		
+		swapRuleStore.release();
+		assertFalse(swapRuleStore.isLoaded("account"));
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(MenuEntryClassifier.BANK, false, AIR_RUNE));
+	}
+	
+	@Test
+	public void testSetAndUnset() {
+		doReturn(mock(ScheduledFuture.class)).when(executor).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+		
+		swapRuleStore.set(MenuEntryClassifier.BANK, true, AIR_RUNE, 4);
+		assertEquals(4, swapRuleStore.get(MenuEntryClassifier.BANK, true, AIR_RUNE));
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(MenuEntryClassifier.BANK, false, AIR_RUNE));
+		
+		swapRuleStore.unset(MenuEntryClassifier.BANK, true, AIR_RUNE);
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(MenuEntryClassifier.BANK, true, AIR_RUNE));
+		
+		// Both changes are written together, once
+		verify(configManager, never()).setConfiguration(anyString(), anyString(), anyString());
+		verify(executor, times(1)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+		swapRuleStore.flush();
+		swapRuleStore.flush();
+		verify(configManager, times(1)).setConfiguration(eq(BankMenuEntrySwapperConfig.GROUP), eq(SwapRuleStore.RULES_KEY), anyString());
+	}
+	
+	@Test
+	public void testApplyConfigChange() {
+		swapRuleStore.set(MenuEntryClassifier.BANK, false, AIR_RUNE, 7);
+		swapRuleStore.set(MenuEntryClassifier.BANK, false, WATER_RUNE, 3);
+		int airVersion = swapRuleStore.getVersion(AIR_RUNE);
+		int waterVersion = swapRuleStore.getVersion(WATER_RUNE);
+		
+		// Rules written elsewhere, where only water rune differs
+		IntIntMap[] tables = SwapRules.emptyTables();
+		tables[0].put(AIR_RUNE, 7);
+		tables[0].put(WATER_RUNE, 4);
+		String encoded = SwapRuleCodec.encode(tables);
+		swapRuleStore.applyConfigChange(null, SwapRuleStore.RULES_KEY, encoded);
+		
+		assertEquals(7, swapRuleStore.get(MenuEntryClassifier.BANK, false, AIR_RUNE));
+		assertEquals(4, swapRuleStore.get(MenuEntryClassifier.BANK, false, WATER_RUNE));
+		assertEquals(airVersion, swapRuleStore.getVersion(AIR_RUNE));
+		assertTrue(swapRuleStore.getVersion(WATER_RUNE) > waterVersion);
+		assertTrue(swapRuleStore.isStored(encoded));
+		
+		// A rule under a legacy key is taken in and the key removed
+		assertTrue(SwapRuleStore.isRuleKey("bank_shift_556"));
+		swapRuleStore.applyConfigChange(null, "bank_shift_556", "5");
+		assertEquals(SwapRuleStore.indexRule(5), swapRuleStore.get(MenuEntryClassifier.BANK, true, AIR_RUNE));
+		verify(configManager).unsetConfiguration(BankMenuEntrySwapperConfig.GROUP, "bank_shift_556");
+		
+		// Removing every rule
+		swapRuleStore.applyConfigChange(null, SwapRuleStore.RULES_KEY, null);
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(MenuEntryClassifier.BANK, false, AIR_RUNE));
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(MenuEntryClassifier.BANK, true, AIR_RUNE));
+	}
+	
+	@Test
+	public void testSnapshot() {
+		swapRuleStore.set(MenuEntryClassifier.BANK, false, AIR_RUNE, 7);
+		SwapRules snapshot = swapRuleStore.snapshot();
+		
+		// Changes are published as new snapshots and never show through an old one
+		swapRuleStore.set(MenuEntryClassifier.BANK, false, AIR_RUNE, 3);
+		swapRuleStore.set(MenuEntryClassifier.BANK, false, WATER_RUNE, 4);
+		assertEquals(7, swapRuleStore.get(snapshot, MenuEntryClassifier.BANK, false, AIR_RUNE));
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(snapshot, MenuEntryClassifier.BANK, false, WATER_RUNE));
+		assertEquals(3, swapRuleStore.get(MenuEntryClassifier.BANK, false, AIR_RUNE));
+		assertTrue(swapRuleStore.getVersion() > snapshot.getVersion());
+		
+		// Removing a rule that does not exist publishes nothing
+		SwapRules current = swapRuleStore.snapshot();
+		swapRuleStore.unset(MenuEntryClassifier.BANK_INVENTORY, true, AIR_RUNE);
+		assertSame(current, swapRuleStore.snapshot());
+	}
+	
+	@Test
+	public void testSwitchProfile() {
+		when(configManager.getConfigurationKeys(BankMenuEntrySwapperConfig.GROUP + ".swapRules_")).thenReturn(Arrays.asList(
+				"bankmenuentryswapper.swapRules_bossing"));
+		IntIntMap[] tables = SwapRules.emptyTables();
+		tables[1].put(WATER_RUNE, 4);
+		when(configManager.getConfiguration(BankMenuEntrySwapperConfig.GROUP, "swapRules_bossing")).thenReturn(SwapRuleCodec.encode(tables));
+		doReturn(mock(ScheduledFuture.class)).when(executor).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+		
+		swapRuleStore.load(null);
+		swapRuleStore.set(MenuEntryClassifier.BANK, false, AIR_RUNE, 7);
+		int version = swapRuleStore.getVersion();
+		
+		// Profiles are loaded up front, so switching only publishes the other rules
+		swapRuleStore.switchProfile("bossing");
+		assertEquals("bossing", swapRuleStore.getProfile());
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(MenuEntryClassifier.BANK, false, AIR_RUNE));
+		assertEquals(4, swapRuleStore.get(MenuEntryClassifier.BANK, true, WATER_RUNE));
+		assertTrue(swapRuleStore.getVersion() > version);
+		
+		// The unsaved change to the default profile is written under its own key
+		ArgumentCaptor<Runnable> write = ArgumentCaptor.forClass(Runnable.class);
+		verify(executor).execute(write.capture());
+		write.getValue().run();
+		verify(configManager).setConfiguration(eq(BankMenuEntrySwapperConfig.GROUP), eq(SwapRuleStore.RULES_KEY), anyString());
+		
+		swapRuleStore.set(MenuEntryClassifier.BANK, false, AIR_RUNE, 3);
+		swapRuleStore.flush();
+		verify(configManager).setConfiguration(eq(BankMenuEntrySwapperConfig.GROUP), eq("swapRules_bossing"), anyString());
+		
+		swapRuleStore.switchProfile(SwapRuleStore.DEFAULT_PROFILE);
+		assertEquals(7, swapRuleStore.get(MenuEntryClassifier.BANK, false, AIR_RUNE));
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(MenuEntryClassifier.BANK, true, WATER_RUNE));
+	}
+	
+	@Test
+	public void testItemVersion() {
+		swapRuleStore.clear();
+		int cleared = swapRuleStore.getVersion(AIR_RUNE);
+		assertEquals(cleared, swapRuleStore.getVersion(WATER_RUNE));
+		
+		// Changing one item's rules leaves the other items' versions alone
+		swapRuleStore.set(MenuEntryClassifier.BANK, false, AIR_RUNE, 7);
+		assertTrue(swapRuleStore.getVersion(AIR_RUNE) > cleared);
+		assertEquals(cleared, swapRuleStore.getVersion(WATER_RUNE));
+		
+		swapRuleStore.clear();
+		assertTrue(swapRuleStore.getVersion(WATER_RUNE) > cleared);
+		assertEquals(swapRuleStore.getVersion(AIR_RUNE), swapRuleStore.getVersion(WATER_RUNE));
+	}
+	
+	@Test
+	public void testGroupRules() {
+		int version = swapRuleStore.getVersion(WATER_RUNE);
+		swapRuleStore.setGroupRules(GroupRules.compile("554-566 = Withdraw-All", id -> null));
+		assertTrue(swapRuleStore.getVersion(WATER_RUNE) > version);
+		assertEquals(7, swapRuleStore.get(MenuEntryClassifier.BANK, false, WATER_RUNE));
+		
+		// A rule on the item takes precedence over its group
+		swapRuleStore.set(MenuEntryClassifier.BANK, false, AIR_RUNE, 3);
+		assertEquals(3, swapRuleStore.get(MenuEntryClassifier.BANK, false, AIR_RUNE));
+		
+		// Group rules are kept when the item rules are replaced
+		swapRuleStore.clear();
+		assertEquals(7, swapRuleStore.get(MenuEntryClassifier.BANK, false, AIR_RUNE));
+	}
+	
+	@Test
+	public void testGroupRulesVariation() {
+		// Prayer potion(3) is a variation of Prayer potion(4)
+		final int prayerPotion3 = 139;
+		final int prayerPotion4 = 2434;
+		assertEquals(prayerPotion4, swapRuleStore.canonicalItemId(prayerPotion3));
+		
+		// Group ids are matched against the item's own id, not its canonical id
+		swapRuleStore.setGroupRules(GroupRules.compile("139 = Withdraw-5", id -> null));
+		assertEquals(3, swapRuleStore.get(MenuEntryClassifier.BANK, false, prayerPotion3));
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(MenuEntryClassifier.BANK, false, prayerPotion4));
+	}
+	
+	@Test
+	public void testNotLoaded() {
+		swapRuleStore.set(MenuEntryClassifier.BANK, false, AIR_RUNE, 7);
+		swapRuleStore.release();
+		
+		// Nothing is changed or written until rules are loaded again
+		swapRuleStore.set(MenuEntryClassifier.BANK, false, WATER_RUNE, 4);
+		swapRuleStore.unset(MenuEntryClassifier.BANK, false, AIR_RUNE);
+		swapRuleStore.applyConfigChange(null, "bank_556", "5");
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(MenuEntryClassifier.BANK, false, WATER_RUNE));
+		assertEquals(SwapRuleStore.NONE, swapRuleStore.get(MenuEntryClassifier.BANK, false, AIR_RUNE));
+		verify(configManager, never()).unsetConfiguration(BankMenuEntrySwapperConfig.GROUP, "bank_556");
+	}
+	
+	@Test
+	public void testReleaseInBackground() {
+		swapRuleStore.set(MenuEntryClassifier.BANK, false, AIR_RUNE, 7);
+		swapRuleStore.release();
+		
+		// The pending change is encoded and written on the executor, not by release()
+		verify(configManager, never()).setConfiguration(anyString(), anyString(), anyString());
+		ArgumentCaptor<Runnable> write = ArgumentCaptor.forClass(Runnable.class);
+		verify(executor).execute(write.capture());
+		write.getValue().run();
+		verify(configManager).setConfiguration(eq(BankMenuEntrySwapperConfig.GROUP), eq(SwapRuleStore.RULES_KEY), anyString());
+	}
+}
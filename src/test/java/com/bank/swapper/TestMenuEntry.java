@@ -24,16 +24,22 @@
  */
 package com.bank.swapper;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 import javax.annotation.Nullable;
 import lombok.EqualsAndHashCode;
 import lombok.Setter;
 import net.runelite.api.Actor;
+import net.runelite.api.Menu;
 import net.runelite.api.MenuAction;
 import net.runelite.api.MenuEntry;
 import net.runelite.api.NPC;
 import net.runelite.api.Player;
 import net.runelite.api.widgets.Widget;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
 
 @EqualsAndHashCode
 public class TestMenuEntry implements MenuEntry {
@@ -56,6 +62,11 @@ public class TestMenuEntry implements MenuEntry {
 	@EqualsAndHashCode.Exclude
 	private Consumer<MenuEntry> clickConsumer;
 	
+	@EqualsAndHashCode.Exclude
+	private Menu subMenu;
+	@EqualsAndHashCode.Exclude
+	private final List<MenuEntry> subMenuEntries = new ArrayList<>();
+	
 	@Override
 	public String getOption() {
 		return option;
@@ -198,6 +209,28 @@ public class TestMenuEntry implements MenuEntry {
 		return actor;
 	}
 	
+	@Override
+	public Menu createSubMenu() {
+		if (subMenu == null) {
+			// Lenient as not every test reads the sub menu back
+			subMenu = mock(Menu.class);
+			lenient().when(subMenu.createMenuEntry(anyInt())).thenAnswer(invocationOnMock -> {
+				TestMenuEntry entry = new TestMenuEntry();
+				int index = invocationOnMock.getArgument(0);
+				subMenuEntries.add(index < 0 ? subMenuEntries.size() + index + 1 : index, entry);
+				return entry;
+			});
+			lenient().when(subMenu.getMenuEntries()).thenAnswer(invocationOnMock -> subMenuEntries.toArray(new MenuEntry[0]));
+		}
+		return subMenu;
+	}
+	
+	@Nullable
+	@Override
+	public Menu getSubMenu() {
+		return subMenu;
+	}
+	
 	public Consumer<MenuEntry> getClickConsumer() {
 		return clickConsumer;
 	}